@@ -1,16 +1,12 @@
 package agent;
 
 import graph.Edge;
-import graph.Position;
 import graph.Tour;
+import graph.TourKey;
 
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
 
 /**
  * Our Class AchieverBoid, representing the flocking boids of success.
@@ -26,7 +22,7 @@ public class AchieverBoid extends Boid {
 	 *            the path length
 	 * @return the speed modifier
 	 */
-	private static double getSpeedModifier(double pathLength) {
+	static double getSpeedModifier(double pathLength) {
 		int magnitude = 1;
 		while (pathLength > magnitude) {
 			magnitude *= 10;
@@ -35,11 +31,17 @@ public class AchieverBoid extends Boid {
 		return (1 + magnitude / pathLength);
 	}
 
-	/** The whole path to follow continuously. */
+	/** The whole path to follow continuously, shared with the other achievers following it. */
 	private Tour pathToFollow;
 
-	/** The path queue of places to visit next. */
-	private Queue<Integer> pathQueue;
+	/** The key of the path to follow, under which it is registered. */
+	private TourKey pathKey;
+
+	/** The index in the path to follow of the place to visit next, past its end when everything was visited. */
+	private int nextStop;
+
+	/** The achievers in sight, reused between ticks. */
+	private final List<AchieverBoid> boidsInSight = new ArrayList<>();
 
 	/**
 	 * Instantiates a new achiever boid out of the original explorer boid.
@@ -50,15 +52,9 @@ public class AchieverBoid extends Boid {
 	public AchieverBoid(Boid boid) {
 		super(boid);
 
-		// register the path to follow
-		this.pathToFollow = new Tour(this.pathTaken);
-		this.pathToFollow.calculateCost(getGraph());
-
-		// let the environment know about my achiever path
-		this.environment.registerPath(this.pathToFollow);
-
-		// build my path queue
-		this.pathQueue = new LinkedList<>();
+		// let the environment know about my achiever path, and follow the instance shared by everyone following it
+		this.pathKey = TourKey.of(this.pathTaken);
+		this.pathToFollow = this.environment.registerPath(this.pathKey, this.pathTaken);
 
 		// set my color
 		float r = this.rand.nextFloat();
@@ -80,54 +76,18 @@ public class AchieverBoid extends Boid {
 	@Override
 	public boolean canSee(Boid b) {
 		// decide based on if your vision fits within the current edge or goes beyond it
+		return BoidRules.canSee(getGraph(), this.visionRange, this.pos.edge, this.pos.distanceFromStart, b.pos.edge,
+				b.pos.distanceFromStart);
+	}
 
-		if (new Double(this.pos.getDistanceToEdgeEnd()).compareTo(this.visionRange) >= 0) {
-			// Vision is completely inside the edge
-			if (!b.pos.isSameEdge(this.pos)) {
-				// can't even see you edge
-				return false;
-			}
-
-			Double difference = b.getPos().getDistanceFromStart() - this.pos.getDistanceFromStart();
-
-			if (difference.compareTo(0d) < 0) {
-				// behind me
-				return false;
-			}
-
-			// test my sight range
-			return difference.compareTo(this.visionRange) <= 0;
-		} else {
-			// Vision exceeds edge
-			if (b.pos.isSameEdge(this.pos)) {
-				// boid in same edge
-				Double difference = b.getPos().getDistanceFromStart() - this.pos.getDistanceFromStart();
-
-				if (difference.compareTo(0d) >= 0) {
-					// visible
-					return true;
-				} else {
-					// behind me
-					return false;
-				}
-			} else {
-				// different edges
-				List<Edge> neighbors = generatePossibleNextEdges();
-				Double visibleDistance = this.visionRange - this.pos.getDistanceToEdgeEnd(); // outside vision
-
-				for (Edge e : neighbors) {
-					if (b.pos.edge.isSameEdge(e)) {
-						// boid is in neighbor edge
-						if (visibleDistance.compareTo(b.pos.distanceFromStart) >= 0) {
-							// inside outside vision
-							return true;
-						}
-					}
-				}
-				// not visible, too far or not neighbor edge
-				return false;
-			}
-		}
+	/**
+	 * Tells if this boid can move concurrently with others. It can't, achievers look for other achievers first.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean movesIndependently() {
+		return false;
 	}
 
 	/**
@@ -135,28 +95,20 @@ public class AchieverBoid extends Boid {
 	 */
 	@Override
 	public void decide() {
-		boolean added = false; // was something added to my path?
-		// test to see if I need to add the location I'm crossing needs to be added to my path
-		if (this.pathTaken.lastLocation() != this.pos.edge.getTo()
-				|| this.getGraph().getEdgeLength(this.pathTaken.lastLocation(), this.pathTaken.lastLocation()) != -1) {
-
-			// i'm passing a new location in my next move, it should be in my path taken
-			this.pathTaken.offer(this.pos.edge.getTo());
-			added = true;
-		}
+		// i'm passing a new location in my next move, it should be in my path taken
+		boolean added = BoidRules.offerCrossedNode(getGraph(), this.pathTaken, this.pos.edge.getTo());
 
-		// check my path queue
-		if (this.pathQueue.isEmpty()) {
+		// check my path
+		if (this.nextStop >= this.pathToFollow.size()) {
 			// I have been everywhere already, see if I can respawn
-			if (checkSegmentOccupation(getSegmentFor(new Position(loadEdge(this.pathToFollow.get(0),
-					this.pathToFollow.get(1)), 0d)))) {
+			if (checkSegmentOccupation(BoidRules.getRespawnEdge(getGraph(), this.pathToFollow), 0)) {
 				// there is space in the start, respawn
 				respawn();
 			} else {
 				// there is no space to respawn, we should wait
 				if (added) {
 					// I'm not going to move anymore, since there is no space, thus I'm not crossing this location now
-					this.pathTaken.locations.remove(this.pathTaken.locations.size() - 1);
+					this.pathTaken.removeLast();
 					added = false;
 				}
 			}
@@ -166,7 +118,7 @@ public class AchieverBoid extends Boid {
 
 		// get movement info for next edge
 		int currentNode = this.getPos().edge.getTo();
-		int nextNode = this.pathQueue.peek();
+		int nextNode = this.pathToFollow.get(this.nextStop);
 
 		Edge nextEdge = loadEdge(currentNode, nextNode);
 		if (nextEdge.getLength() < 0) {
@@ -179,9 +131,9 @@ public class AchieverBoid extends Boid {
 		// try to move to next
 		tryToMoveToNextEdge(nextEdge);
 
-		// if I really moved, I consumed one edge of my queue
-		if (!this.pos.edge.equals(currentEdge)) {
-			this.pathQueue.poll();
+		// if I really moved, I consumed one edge of my path
+		if (this.pos.edge.getId() != currentEdge.getId()) {
+			this.nextStop++;
 		}
 	}
 
@@ -192,7 +144,7 @@ public class AchieverBoid extends Boid {
 	 */
 	@Override
 	public Double getPathDistance() {
-		return this.pathToFollow.lastCalculatedCost;
+		return this.pathToFollow.getLastCalculatedCost();
 	}
 
 	/**
@@ -211,15 +163,14 @@ public class AchieverBoid extends Boid {
 		// clear path taken
 		this.pathTaken.clear();
 
-		// reset queue
-		this.pathQueue.clear();
-		this.pathQueue.addAll(this.pathToFollow.locations);
+		// adjust position, to the first edge of my path
+		int firstNode = this.pathToFollow.get(0);
+		this.nextStop = BoidRules.FIRST_STOP;
 
-		// adjust position
-		Integer firstNode = this.pathQueue.poll();
-		Integer secondNode = this.pathQueue.poll();
-
-		this.setPosition(new Position(loadEdge(firstNode, secondNode), 0d));
+		if (!this.setPosition(BoidRules.getRespawnEdge(getGraph(), this.pathToFollow), 0d)) {
+			// the space at the start is checked before respawning
+			throw new RuntimeException("Max segment occupancy exceeded.");
+		}
 
 		// correct path taken
 		this.pathTaken.offer(firstNode);
@@ -235,29 +186,26 @@ public class AchieverBoid extends Boid {
 	public void tryToMove(double distance) {
 
 		// 1) Check for other achiever boids around
-		Set<AchieverBoid> boidsInSight = getBoidsInSight();
+		List<AchieverBoid> boidsInSight = getBoidsInSight();
 
 		// 2) Compare the traveled distance and 3) Update the path
 		for (AchieverBoid boid : boidsInSight) {
 			// check the boid's tiredness and speed
-			if (boid.getPathDistance().compareTo(this.getPathDistance()) < 0
-					|| (boid.getPathDistance().compareTo(this.getPathDistance()) == 0 && boid.speed > this.speed)) {
+			if (BoidRules.isBetterAchiever(getPathDistance(), this.speed, boid.getPathDistance(), boid.speed)) {
 				// I decided to follow, the guy is better than me
 
 				// Unregister my path, I will change it
-				this.environment.unregisterPath(this.pathToFollow);
+				this.environment.unregisterPath(this.pathKey);
 
-				// Get my new path
-				this.pathToFollow = new Tour(boid.getPathToFollow());
-
-				// Register it
-				this.environment.registerPath(this.pathToFollow);
+				// Get my new path and register it, the instance is shared
+				this.pathKey = boid.pathKey;
+				this.pathToFollow = this.environment.registerPath(this.pathKey, boid.getPathToFollow());
 
 				// Update my speed, if to improve
 				this.speed = boid.speed > this.speed ? boid.speed : this.speed;
 
-				// update path queue so that the boid can follow correctly
-				updatePathQueueFromBoid(boid);
+				// update the place to visit next so that the boid can follow correctly
+				updateNextStopFromBoid(boid);
 
 				// absorb color for GUI purposes
 				this.color = new Color(boid.color.getRed(), boid.color.getGreen(), boid.color.getBlue());
@@ -283,36 +231,43 @@ public class AchieverBoid extends Boid {
 	}
 
 	/**
-	 * Update path queue from other boid (aka where should I go now that I'm following you?).
+	 * Update the place to visit next from other boid (aka where should I go now that I'm following you?).
 	 * 
 	 * @param boid
 	 *            the boid
 	 */
-	protected void updatePathQueueFromBoid(AchieverBoid boid) {
-		this.pathQueue.clear();
-		if (this.pos.getTo() == boid.pos.getFrom()) {
-			// if the other boid was in the node we're trying to reach
-			// our next node should be other's current endNode, but it's not in its queue anymore
-			this.pathQueue.add(boid.pos.getTo());
-		}
-		this.pathQueue.addAll(boid.pathQueue);
+	protected void updateNextStopFromBoid(AchieverBoid boid) {
+		// if the other boid was in the node we're trying to reach
+		// our next node should be other's current endNode, the one before its next stop
+		this.nextStop = BoidRules.getNextStopWhenFollowing(this.pos.getTo(), boid.nextStop, boid.pos.getFrom());
 	}
 
 	/**
-	 * Gets the boids in sight.
+	 * Gets the boids in sight, the achievers this boid {@link #canSee(Boid)}. They are looked up by edge, on the
+	 * current edge (in either direction) and, if the vision reaches the end node, on the edges around it.
 	 * 
-	 * @return the boids in sight
+	 * @return the boids in sight, in a list reused by the next call
 	 */
-	private Set<AchieverBoid> getBoidsInSight() {
-		Set<AchieverBoid> boidsInSight = new HashSet<>();
+	private List<AchieverBoid> getBoidsInSight() {
+		List<AchieverBoid> boidsInSight = this.boidsInSight;
+		boidsInSight.clear();
 
-		for (AchieverBoid b : this.environment.getAllAchievers()) {
-			if (canSee(b)) {
-				boidsInSight.add(b);
-			}
-		}
+		BoidsByEdge<AchieverBoid> achievers = this.environment.getAchieversByEdge();
+		int from = this.pos.getFrom();
+		int to = this.pos.getTo();
+		double distance = this.pos.getDistanceFromStart();
+		double distanceToEnd = this.pos.getDistanceToEdgeEnd();
 
-		boidsInSight.remove(this);
+		if (distanceToEnd >= this.visionRange) {
+			// Vision is completely inside the edge
+			achievers.collect(from, to, distance, this.visionRange, this, boidsInSight);
+			achievers.collect(to, from, distance, this.visionRange, this, boidsInSight);
+		} else {
+			// Vision exceeds edge, everything ahead on this edge and the start of the next ones
+			achievers.collect(from, to, distance, Double.POSITIVE_INFINITY, this, boidsInSight);
+			achievers.collect(to, from, distance, Double.POSITIVE_INFINITY, this, boidsInSight);
+			achievers.collectAround(to, from, this.visionRange - distanceToEnd, this, boidsInSight);
+		}
 		return boidsInSight;
 	}
 
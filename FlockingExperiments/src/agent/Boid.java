@@ -9,11 +9,9 @@ import graph.Tour;
 
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
-import util.SortableKeyValue;
 import util.WeightedRouletteWheelSelector;
 
 /**
@@ -36,7 +34,7 @@ public class Boid {
 	protected Double visionRange;
 
 	/** The traveled distance until now. */
-	protected Double traveledDistance; // Tiredness
+	protected double traveledDistance; // Tiredness
 
 	/** The path taken up to here. */
 	protected Tour pathTaken;
@@ -53,9 +51,42 @@ public class Boid {
 	/** The goal evaluator. */
 	protected GoalEvaluator goalEvaluator;
 
-	/** The random instance. */
+	/** The random instance, a stream of this boid's own when spawned by a problem. */
 	protected Random rand;
 
+	/** The possible next edges of the last decision, reused between decisions. */
+	private final List<Edge> possibleNextEdges = new ArrayList<Edge>();
+
+	/** The choice probabilities of the possible next edges, reused between decisions. */
+	private double[] choiceProbabilities = new double[0];
+
+	/** The possible next nodes of the current decision, reused between decisions. */
+	private int[] possibleNextNodes = new int[0];
+
+	/** The index of this boid in the population of the environment, or -1 while it is not part of it. */
+	int populationIndex = -1;
+
+	/** Whether this boid died and leaves the population of the environment at the next tick boundary. */
+	boolean leavingPopulation;
+
+	/** The bucket of the edge index where this boid is, or null if it is not indexed. */
+	BoidsByEdge.Bucket indexedBucket;
+
+	/** The index of this boid in its bucket of the edge index, or -1 if it is not indexed. */
+	int indexedSlot = -1;
+
+	/** The edge of the move this boid proposed, or null if it has no proposed move. */
+	Edge proposedEdge;
+
+	/** The distance from the start of the edge of the move this boid proposed. */
+	double proposedDistanceFromStart;
+
+	/** Whether the move this boid proposed crosses to another edge. */
+	boolean proposedCrossing;
+
+	/** The distance traveled by the move this boid proposed. */
+	double proposedTravel;
+
 	/**
 	 * Instantiates a new boid out of other boid, copying the attributes.
 	 * 
@@ -63,7 +94,7 @@ public class Boid {
 	 *            the other boid
 	 */
 	public Boid(Boid otherBoid) {
-		this.pos = otherBoid.pos;
+		this.pos = otherBoid.pos.clone();
 		this.speed = otherBoid.speed;
 		this.visionRange = otherBoid.visionRange;
 		this.distanceChoiceWeight = otherBoid.distanceChoiceWeight;
@@ -77,8 +108,7 @@ public class Boid {
 		this.rand = otherBoid.rand;
 
 		// Remember to increase occupancy where I appeared
-		Segment segment = getSegmentFor(this.pos);
-		segment.incrementOccupancy();
+		occupyCurrentSegment();
 	}
 
 	/**
@@ -121,8 +151,7 @@ public class Boid {
 		this.environment.addNewFreeBoid(this);
 
 		// Remember to increase occupancy where I appeared
-		Segment segment = getSegmentFor(this.pos);
-		segment.incrementOccupancy();
+		occupyCurrentSegment();
 	}
 
 	/**
@@ -130,8 +159,7 @@ public class Boid {
 	 */
 	public void die() {
 		// decrease occupancy where I was
-		Segment segment = getSegmentFor(this.pos);
-		segment.decrementOccupancy();
+		vacateCurrentSegment();
 
 		// let the environment know I no longer exist
 		this.environment.boidDied(this);
@@ -203,16 +231,15 @@ public class Boid {
 		// check if you are going to cross the edge
 		if (checkEdgeBoundaries(distance)) {
 			// nope, you will move entirely inside the current edge
-			Position newWouldBePos = this.pos.clone();
-			newWouldBePos.dislocate(distance);
-			Segment nextWouldBeSegment = getSegmentFor(newWouldBePos);
+			Edge edge = this.pos.edge;
+			int nextWouldBeSegment = getGraph().getSegmentIndexForDistance(edge, this.pos.distanceFromStart + distance);
 			// check if you have space to move full speed
-			if (checkSegmentOccupation(nextWouldBeSegment)) {
+			if (checkSegmentOccupation(edge, nextWouldBeSegment)) {
 				// free space, just move
 				moveDistance(distance);
 			} else {
 				// occupied, go as far as you can within your speed
-				moveToFarthestAvailableLocation(getSegmentFor(this.pos), nextWouldBeSegment);
+				moveToFarthestAvailableLocation(getGraph().getSegmentIndexForPosition(this.pos), nextWouldBeSegment);
 			}
 		} else {
 			// crossing edges, where should you go?
@@ -232,41 +259,53 @@ public class Boid {
 		return false;
 	}
 
+	/**
+	 * Tells if the moves of this boid only touch this boid and the segments it goes through, so it can move at the
+	 * same time as others (see {@link ParallelMover}). Boids that look at others while moving must return false.
+	 * 
+	 * @return true, if this boid can move concurrently with others
+	 */
+	protected boolean movesIndependently() {
+		// as an explorer, I don't look around
+		return true;
+	}
+
 	/**
 	 * Check segment occupation.
 	 * 
-	 * @param seg
-	 *            the segment
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
 	 * @return true, if not full yet (aka has space for me)
 	 */
-	protected boolean checkSegmentOccupation(Segment seg) {
-		return !seg.isFull();
+	protected boolean checkSegmentOccupation(Edge edge, int segmentIndex) {
+		return !getGraph().isSegmentFull(edge, segmentIndex);
 	}
 
 	/**
 	 * Decide where to go next, what edge to take.
 	 */
 	protected void decide() {
-		boolean added = false; // was something added to my path?
-		// test to see if I need to add the location I'm crossing needs to be added to my path
-		if (this.pathTaken.lastLocation() != this.pos.edge.getTo()
-				|| this.getGraph().getEdgeLength(this.pathTaken.lastLocation(), this.pathTaken.lastLocation()) != -1) {
-
-			// i'm passing a new location in my next move, it should be in my path taken
-			this.pathTaken.offer(this.pos.edge.getTo());
-			added = true;
-		}
+		// i'm passing a new location in my next move, it should be in my path taken
+		boolean added = BoidRules.offerCrossedNode(getGraph(), this.pathTaken, this.pos.edge.getTo());
 
 		// am I going to achieve my goal?
 		if (this.goalEvaluator.isGoal(getGraph(), this.pathTaken)) {
-			// yes, goal is going to be achieved. Do I have space to respawn as an achiever?
-			if (checkSegmentOccupation(getSegmentFor(new Position(
-					loadEdge(this.pathTaken.get(0), this.pathTaken.get(1)), 0d)))) {
+			// yes, goal is going to be achieved. Achievers join the population, which can't change while others move
+			if (this.environment.deferMove(this)) {
+				if (added) {
+					this.pathTaken.removeLast();
+				}
+				return;
+			}
+			// Do I have space to respawn as an achiever?
+			if (checkSegmentOccupation(loadEdge(this.pathTaken.get(0), this.pathTaken.get(1)), 0)) {
 				becomeAchiever();
 			} else {
 				// no space, I'm not achieving yet. Lets remove the added location since it is left for next attempt.
 				if (added) {
-					this.pathTaken.locations.remove(this.pathTaken.locations.size() - 1);
+					this.pathTaken.removeLast();
 					added = false;
 				}
 			}
@@ -274,10 +313,17 @@ public class Boid {
 			return;
 		}
 
-		List<Edge> possibleEdges = generatePossibleNextEdges();
+		List<Edge> possibleEdges = this.possibleNextEdges;
+		generatePossibleNextEdges(possibleEdges);
 
 		if (possibleEdges.isEmpty()) {
-			// nowhere to go, dead end
+			// nowhere to go, dead end. Dying changes the population, which can't change while others move
+			if (this.environment.deferMove(this)) {
+				if (added) {
+					this.pathTaken.removeLast();
+				}
+				return;
+			}
 			die();
 			return;
 		}
@@ -309,48 +355,30 @@ public class Boid {
 	 * @return the list
 	 */
 	protected List<Edge> generatePossibleNextEdges() {
-		// get neighbors
-		ArrayList<Integer> closestNeighbors = getGraph().getClosestNeighborsSortedByDistance(this.pos.edge.getTo());
-
-		if (!closestNeighbors.isEmpty()) {
-			// I have neighbors, but lets prioritize the unvisited ones
-			ArrayList<Integer> closestUnvisitedNeighbors = new ArrayList<>();
-			closestUnvisitedNeighbors.addAll(closestNeighbors);
-
-			for (int i : this.pathTaken.locations) {
-				closestUnvisitedNeighbors.remove(new Integer(i));
-			}
+		List<Edge> possibleEdges = new ArrayList<Edge>();
+		generatePossibleNextEdges(possibleEdges);
+		return possibleEdges;
+	}
 
-			// is any neighbor still unvisited?
-			if (!closestUnvisitedNeighbors.isEmpty()) {
-				// yes, prioritize them
-				closestNeighbors = closestUnvisitedNeighbors;
-			} else {
-				// my neighbors were all visited. Did I visit everywhere?
-				boolean gotAllCities = true;
-				for (int i = 0; i < this.getGraph().getNumberOfNodes(); i++) {
-					if (!this.pathTaken.locations.contains(new Integer(i))) {
-						gotAllCities = false;
-						break;
-					}
-				}
+	/**
+	 * Generate possible next edges into the given list, replacing its contents.
+	 * 
+	 * @param possibleEdges
+	 *            the list to fill
+	 */
+	protected void generatePossibleNextEdges(List<Edge> possibleEdges) {
+		possibleEdges.clear();
 
-				// If I have been everywhere, I should return to the start (TSP)
-				if (gotAllCities) {
-					Integer startNode = this.pathTaken.firstLocation();
-					// is there any link from here to the start?
-					if (closestNeighbors.contains(startNode)) {
-						// yes, lets go there for sure
-						closestNeighbors.clear();
-						closestNeighbors.add(startNode);
-					}
-					// otherwise don't touch, let it go wherever it can
-				}
-			}
+		int from = this.pos.edge.getTo();
+		int candidates = getGraph().getCandidateList(from).length;
+		if (this.possibleNextNodes.length < candidates) {
+			this.possibleNextNodes = new int[candidates];
 		}
 
-		List<Edge> possibleEdges = generateEdges(closestNeighbors);
-		return possibleEdges;
+		int count = BoidRules.generatePossibleNextNodes(getGraph(), this.pathTaken, from, this.possibleNextNodes);
+		for (int i = 0; i < count; i++) {
+			possibleEdges.add(loadEdge(from, this.possibleNextNodes[i]));
+		}
 	}
 
 	/**
@@ -362,17 +390,9 @@ public class Boid {
 	 *            the possible edges
 	 * @return the partial choice probability
 	 */
-	protected Double getPartialChoiceProbability(Edge edge, List<Edge> possibleEdges) {
+	protected double getPartialChoiceProbability(Edge edge, List<Edge> possibleEdges) {
 		// TODO: Maybe update this to include all the visible segments?
-
-		// check occupation values for the first segment of this edge
-		Position p = new Position(edge, 0d);
-		Segment firstSegment = getSegmentFor(p);
-
-		// formula
-		Double probability = Math.pow((firstSegment.maxOccupancy - firstSegment.getCurrentOccupancy()),
-				this.occupancyChoiceWeight) * Math.pow(1d / edge.getLength(), this.distanceChoiceWeight);
-		return probability;
+		return BoidRules.getChoiceProbability(getGraph(), edge, this.distanceChoiceWeight, this.occupancyChoiceWeight);
 	}
 
 	/**
@@ -389,57 +409,55 @@ public class Boid {
 	}
 
 	/**
-	 * Select next edge.
+	 * Select next edge, with a roulette wheel weighted by the choice probabilities.
 	 * 
 	 * @param possibleEdges
 	 *            the possible edges
 	 * @return the edge
 	 */
 	protected Edge selectNextEdge(List<Edge> possibleEdges) {
-		List<SortableKeyValue<?, Double>> edgeProbabilityPairs = new ArrayList<SortableKeyValue<?, Double>>();
-		Double totalSum = 0d;
+		int count = possibleEdges.size();
+		if (this.choiceProbabilities.length < count) {
+			this.choiceProbabilities = new double[count];
+		}
+		double totalSum = 0d;
 
 		// calculate edge probabilities
-		for (Edge e : possibleEdges) {
-			Double probability = getPartialChoiceProbability(e, possibleEdges);
-			if (probability.compareTo(0d) > 0) {
+		for (int i = 0; i < count; i++) {
+			double probability = getPartialChoiceProbability(possibleEdges.get(i), possibleEdges);
+			if (probability > 0d) {
 				totalSum += probability;
-				edgeProbabilityPairs.add(new SortableKeyValue<Edge, Double>(e, probability));
+			} else {
+				probability = 0d;
 			}
+			this.choiceProbabilities[i] = probability;
 		}
 
-		if (totalSum.compareTo(0d) <= 0) {
-			return null;
-		}
-
-		// normalize the probabilities
-		for (SortableKeyValue<?, Double> pair : edgeProbabilityPairs) {
-			pair.valueToUseOnSorting = pair.valueToUseOnSorting / totalSum;
-		}
-
-		// sort and pick one
-		Collections.sort(edgeProbabilityPairs);
-
-		WeightedRouletteWheelSelector selector = new WeightedRouletteWheelSelector(edgeProbabilityPairs, this.rand);
-		Edge e = (Edge) selector.getRandom().keyObject;
-
-		return e;
+		int selected = WeightedRouletteWheelSelector.select(this.choiceProbabilities, count, totalSum, this.rand);
+		return selected < 0 ? null : possibleEdges.get(selected);
 	}
 
 	/**
-	 * Sets the position to the given one, handling the occupancy changes.
+	 * Sets the position to the given edge and distance, handling the occupancy changes. Nothing changes if the segment
+	 * there is full.
 	 * 
-	 * @param pos
-	 *            the new position
+	 * @param edge
+	 *            the new edge
+	 * @param distanceFromStart
+	 *            the new distance from the start of the edge
+	 * @return true, if moved
 	 */
-	protected void setPosition(Position pos) {
-		Segment currentSegment = getSegmentFor(this.pos);
-		currentSegment.decrementOccupancy();
+	protected boolean setPosition(Edge edge, double distanceFromStart) {
+		FlockingGraph graph = getGraph();
+		if (!graph.moveOccupancy(this.pos.edge, graph.getSegmentIndexForPosition(this.pos), edge,
+				graph.getSegmentIndexForDistance(edge, distanceFromStart))) {
+			return false;
+		}
 
-		this.pos = pos;
+		this.pos.set(edge, distanceFromStart);
 
-		Segment nextSegment = getSegmentFor(this.pos);
-		nextSegment.incrementOccupancy();
+		this.environment.boidMoved(this);
+		return true;
 	}
 
 	/**
@@ -460,52 +478,108 @@ public class Boid {
 			}
 
 			// set your movement range for the next edge, depending on the occupation only
-			Position minNextEdgePosition = new Position(edge, 0d);
-			Position maxNextEdgePosition = new Position(edge, distanceOnNext);
-
-			Segment minSegmentNext = getSegmentFor(minNextEdgePosition);
-			Segment maxSegmentNext = getSegmentFor(maxNextEdgePosition);
+			FlockingGraph graph = getGraph();
+			int maxSegmentNext = graph.getSegmentIndexForDistance(edge, distanceOnNext);
 
 			// what is the farthest segment you can reach and is available?
-			Segment farthestAvailableOnNext = getGraph().getFarthestAvailableSegment(minSegmentNext, maxSegmentNext);
+			int farthestAvailableOnNext = graph.getFarthestAvailableSegmentIndex(edge, 0, maxSegmentNext);
 
-			// if even the segment returned is null, you have no space on the next edge
-			if (farthestAvailableOnNext.isFull()) {
+			// if even the segment returned is full, you have no space on the next edge
+			if (graph.isSegmentFull(edge, farthestAvailableOnNext)) {
 				// you won't cross now, remove the location from you path since you will move inside only
-				this.pathTaken.locations.remove(this.pathTaken.locations.size() - 1);
+				this.pathTaken.removeLast();
 
 				// move as far as you can inside
-				Position minEdgePosition = this.pos;
-				Position maxEdgePosition = new Position(this.pos.edge, this.pos.distanceFromStart + distanceWithin
-						- FlockingGraph.MINIMUM_DISTANCE_MARGIN);
+				int minSegmentHere = graph.getSegmentIndexForPosition(this.pos);
+				double maxDistanceHere = this.pos.distanceFromStart + distanceWithin
+						- FlockingGraph.MINIMUM_DISTANCE_MARGIN;
 
-				if (minEdgePosition.isAfterOrEqual(maxEdgePosition)) {
+				int maxSegmentHere = minSegmentHere;
+				if (this.pos.isBefore(maxDistanceHere)) {
 					// if you are already in the limit of the edge, don't get lost within precision cases, just stay
-					maxEdgePosition = minEdgePosition;
+					maxSegmentHere = graph.getSegmentIndexForDistance(this.pos.edge, maxDistanceHere);
 				}
 
-				Segment minSegmentHere = getSegmentFor(minEdgePosition);
-				Segment maxSegmentHere = getSegmentFor(maxEdgePosition);
-
 				// move inside
 				moveToFarthestAvailableLocation(minSegmentHere, maxSegmentHere);
 			} else {
 				// you can move to the next edge, there is space somewhere
-				if (distanceOnNext >= farthestAvailableOnNext.exclusiveEndLocation.distanceFromStart) {
+				double farthestAvailableEnd = graph.getSegmentEnd(edge, farthestAvailableOnNext);
+				double distance = distanceOnNext;
+				if (distanceOnNext >= farthestAvailableEnd) {
 					// your potential movement is greater than the farthest available position, you need to move less
-					double distance = farthestAvailableOnNext.exclusiveEndLocation.distanceFromStart
-							- FlockingGraph.MINIMUM_DISTANCE_MARGIN;
+					distance = farthestAvailableEnd - FlockingGraph.MINIMUM_DISTANCE_MARGIN;
+				}
+				if (this.environment.isProposingMoves()) {
+					propose(edge, distance, true, distance);
+				} else if (this.setPosition(edge, distance)) {
 					this.traveledDistance += distance;
-					this.setPosition(new Position(edge, distance));
 				} else {
-					// your potential movement is acceptable, move
-					this.traveledDistance += distanceOnNext;
-					this.setPosition(new Position(edge, distanceOnNext));
+					// somebody moving at the same time took the space, you will cross on your next attempt
+					this.pathTaken.removeLast();
 				}
 			}
 		}
 	}
 
+	/**
+	 * Takes the space for the move this boid proposed, the first step of committing it. Once every proposed move took
+	 * its space, the boids can leave their segments with {@link #commitProposedMove(boolean)} without overfilling any.
+	 * 
+	 * @return true, if there was space for the move (or it stays in the same segment)
+	 */
+	boolean claimProposedSegment() {
+		FlockingGraph graph = getGraph();
+		int target = graph.getSegmentIndexForDistance(this.proposedEdge, this.proposedDistanceFromStart);
+		if (graph.isSameSegment(this.pos.edge, graph.getSegmentIndexForPosition(this.pos), this.proposedEdge, target)) {
+			return true;
+		}
+		return graph.tryIncrementOccupancy(this.proposedEdge, target);
+	}
+
+	/**
+	 * Makes the move this boid proposed, or drops it if it didn't get its space.
+	 * 
+	 * @param claimed
+	 *            whether {@link #claimProposedSegment()} took the space for the move
+	 */
+	void commitProposedMove(boolean claimed) {
+		if (claimed) {
+			FlockingGraph graph = getGraph();
+			int current = graph.getSegmentIndexForPosition(this.pos);
+			int target = graph.getSegmentIndexForDistance(this.proposedEdge, this.proposedDistanceFromStart);
+			if (!graph.isSameSegment(this.pos.edge, current, this.proposedEdge, target)) {
+				graph.decrementOccupancy(this.pos.edge, current);
+			}
+			this.pos.set(this.proposedEdge, this.proposedDistanceFromStart);
+			this.environment.boidMoved(this);
+			this.traveledDistance += this.proposedTravel;
+		} else if (this.proposedCrossing) {
+			// the space went to a boid before me, I will cross on my next attempt
+			this.pathTaken.removeLast();
+		}
+		this.proposedEdge = null;
+	}
+
+	/**
+	 * Proposes a move, to be made once every boid proposed its own.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param distanceFromStart
+	 *            the distance from the start of the edge
+	 * @param crossing
+	 *            whether the move crosses to another edge
+	 * @param travel
+	 *            the distance traveled
+	 */
+	private void propose(Edge edge, double distanceFromStart, boolean crossing, double travel) {
+		this.proposedEdge = edge;
+		this.proposedDistanceFromStart = distanceFromStart;
+		this.proposedCrossing = crossing;
+		this.proposedTravel = travel;
+	}
+
 	/**
 	 * Become achiever, register in the environment.
 	 */
@@ -542,16 +616,25 @@ public class Boid {
 	 *            the distance
 	 */
 	private void moveDistance(double distance) {
-		Segment currentSegment = getSegmentFor(this.pos);
-		currentSegment.decrementOccupancy();
-
-		this.pos.dislocate(distance);
-		if (this.pos.distanceFromStart > this.pos.edge.getLength()) {
+		FlockingGraph graph = getGraph();
+		Edge edge = this.pos.edge;
+		double distanceFromStart = this.pos.distanceFromStart + distance;
+		if (distanceFromStart > edge.getLength()) {
 			throw new RuntimeException("Deslocate limit error");
 		}
+		if (this.environment.isProposingMoves()) {
+			propose(edge, distanceFromStart, false, distance);
+			return;
+		}
+		if (!graph.moveOccupancy(edge, graph.getSegmentIndexForPosition(this.pos), edge,
+				graph.getSegmentIndexForDistance(edge, distanceFromStart))) {
+			// somebody moving at the same time took the space, stay
+			return;
+		}
+
+		this.pos.dislocate(distance);
 
-		Segment nextSegment = getSegmentFor(this.pos);
-		nextSegment.incrementOccupancy();
+		this.environment.boidMoved(this);
 
 		this.traveledDistance += distance;
 	}
@@ -560,13 +643,14 @@ public class Boid {
 	 * Move to farthest available location within the range.
 	 * 
 	 * @param current
-	 *            the current
+	 *            the index of the current segment
 	 * @param limit
-	 *            the limit
+	 *            the index of the limit segment
 	 */
-	private void moveToFarthestAvailableLocation(Segment current, Segment limit) {
-		Segment farthestAvailable = getGraph().getFarthestAvailableSegment(current, limit);
-		double endOfTheSegment = farthestAvailable.exclusiveEndLocation.distanceFromStart;
+	private void moveToFarthestAvailableLocation(int current, int limit) {
+		FlockingGraph graph = getGraph();
+		int farthestAvailable = graph.getFarthestAvailableSegmentIndex(this.pos.edge, current, limit);
+		double endOfTheSegment = graph.getSegmentEnd(this.pos.edge, farthestAvailable);
 		// get to right before the end of the segment
 		double diff = endOfTheSegment - FlockingGraph.MINIMUM_DISTANCE_MARGIN - this.pos.distanceFromStart;
 
@@ -578,4 +662,20 @@ public class Boid {
 		}
 	}
 
+	/**
+	 * Increments the occupancy of the segment where this boid is.
+	 */
+	private void occupyCurrentSegment() {
+		FlockingGraph graph = getGraph();
+		graph.incrementOccupancy(this.pos.edge, graph.getSegmentIndexForPosition(this.pos));
+	}
+
+	/**
+	 * Decrements the occupancy of the segment where this boid is.
+	 */
+	private void vacateCurrentSegment() {
+		FlockingGraph graph = getGraph();
+		graph.decrementOccupancy(this.pos.edge, graph.getSegmentIndexForPosition(this.pos));
+	}
+
 }
@@ -0,0 +1,784 @@
+package agent;
+
+import goal.GoalEvaluator;
+import goal.TSPGoalEvaluator;
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Position;
+import graph.Tour;
+import graph.TourKey;
+import graph.TraditionalGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import util.SortableKeyValue;
+import util.SplitMix64Random;
+import util.WeightedRouletteWheelSelector;
+
+/**
+ * A population of boids kept as parallel arrays indexed by boid id, instead of one object per boid. The position
+ * (edge id and distance), speed, state, traveled distance and path of each boid live in primitive arrays, and the
+ * rules of {@link Boid} and {@link AchieverBoid} (see {@link BoidRules}) run as kernels over them, so a tick is a
+ * linear sweep over the population. The explorers look for a TSP tour, with a {@link TSPGoalEvaluator}.
+ *
+ * Achievers see each other through buckets of achievers per node, built at the start of each tick. An achiever that
+ * moves to another edge during a tick is seen where it was until the next tick.
+ *
+ * Each boid draws from a random stream of its own, split from the one of the population when it spawns, like the
+ * boids of {@link problem.Problem}.
+ */
+public class BoidPopulation {
+
+	/** The state of a slot with no boid. */
+	public static final byte FREE = 0;
+
+	/** The state of an explorer boid. */
+	public static final byte EXPLORER = 1;
+
+	/** The state of an achiever boid. */
+	public static final byte ACHIEVER = 2;
+
+	/** The initial number of boid slots. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The goal of the explorers. */
+	private static final GoalEvaluator GOAL = new TSPGoalEvaluator();
+
+	/** The graph where the boids live. */
+	private final FlockingGraph graph;
+
+	/** The distance choice weight. */
+	private final double distanceChoiceWeight;
+
+	/** The occupancy choice weight. */
+	private final double occupancyChoiceWeight;
+
+	/** The vision range of achievers. */
+	private final double visionRange;
+
+	/** The random stream the streams of the boids are split from. */
+	private final SplitMix64Random rand;
+
+	/** The state of each boid slot. */
+	private byte[] states;
+
+	/** The id of the edge where each boid is. */
+	private int[] edgeIds;
+
+	/** The distance of each boid from the start of its edge. */
+	private double[] distances;
+
+	/** The speed of each boid. */
+	private double[] speeds;
+
+	/** The distance traveled by each boid. */
+	private double[] traveledDistances;
+
+	/** The path taken by each explorer, kept for the next boid in the slot once the explorer is gone. */
+	private Tour[] paths;
+
+	/** The random stream of each boid. */
+	private SplitMix64Random[] rands;
+
+	/** The tour each achiever follows. */
+	private int[] tourIds;
+
+	/** The position in its tour of the next node each achiever goes to. */
+	private int[] tourCursors;
+
+	/** The number of slots used so far, free or not. */
+	private int slotCount;
+
+	/** The slots of dead boids, to be reused. */
+	private int[] freeSlots;
+
+	/** The number of slots of dead boids. */
+	private int freeSlotCount;
+
+	/** The number of explorers. */
+	private int explorerCount;
+
+	/** The number of achievers. */
+	private int achieverCount;
+
+	/** The ids of the tours found, by key, so the same tour started elsewhere or walked backwards gets one id. */
+	private final HashMap<TourKey, Integer> tourIdsByTour;
+
+	/** The tours found, with the number of achievers following each, by id. */
+	private final List<TourRanking.Entry> tours;
+
+	/** The ranking of the tours found by population. */
+	private final TourRanking tourRanking;
+
+	/** The cost of the tours found, by id. */
+	private double[] tourCosts;
+
+	/** The start of the achievers touching each node in {@link #sightBuckets}. */
+	private final int[] sightBucketStarts;
+
+	/** The achievers on an edge touching each node, grouped by node. */
+	private int[] sightBuckets;
+
+	/** The possible next nodes of the current decision. */
+	private int[] candidates;
+
+	/** The choice probabilities of the current decision. */
+	private double[] probabilities;
+
+	/**
+	 * Instantiates a new empty population.
+	 *
+	 * @param graph
+	 *            the graph where the boids live
+	 * @param distanceChoiceWeight
+	 *            the distance choice weight
+	 * @param occupancyChoiceWeight
+	 *            the occupancy choice weight
+	 * @param visionRange
+	 *            the vision range of achievers
+	 * @param r
+	 *            the random stream the streams of the boids are split from
+	 */
+	public BoidPopulation(FlockingGraph graph, double distanceChoiceWeight, double occupancyChoiceWeight,
+			double visionRange, SplitMix64Random r) {
+		this.graph = graph;
+		this.distanceChoiceWeight = distanceChoiceWeight;
+		this.occupancyChoiceWeight = occupancyChoiceWeight;
+		this.visionRange = visionRange;
+		this.rand = r;
+
+		this.states = new byte[INITIAL_CAPACITY];
+		this.edgeIds = new int[INITIAL_CAPACITY];
+		this.distances = new double[INITIAL_CAPACITY];
+		this.speeds = new double[INITIAL_CAPACITY];
+		this.traveledDistances = new double[INITIAL_CAPACITY];
+		this.paths = new Tour[INITIAL_CAPACITY];
+		this.rands = new SplitMix64Random[INITIAL_CAPACITY];
+		this.tourIds = new int[INITIAL_CAPACITY];
+		this.tourCursors = new int[INITIAL_CAPACITY];
+		this.freeSlots = new int[INITIAL_CAPACITY];
+
+		this.tourIdsByTour = new HashMap<TourKey, Integer>();
+		this.tours = new ArrayList<TourRanking.Entry>();
+		this.tourRanking = new TourRanking();
+		this.tourCosts = new double[INITIAL_CAPACITY];
+
+		this.sightBucketStarts = new int[graph.getNumberOfNodes() + 1];
+		this.sightBuckets = new int[INITIAL_CAPACITY];
+		this.candidates = new int[INITIAL_CAPACITY];
+		this.probabilities = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Spawns a new explorer.
+	 *
+	 * @param position
+	 *            the position
+	 * @param speed
+	 *            the speed
+	 * @return the boid id
+	 */
+	public int spawnExplorer(Position position, double speed) {
+		// take the space first, it fails if the segment is full
+		this.graph.incrementOccupancy(position.edge, this.graph.getSegmentIndexForPosition(position));
+
+		int boid = allocateSlot();
+		this.states[boid] = EXPLORER;
+		this.edgeIds[boid] = position.edge.getId();
+		this.distances[boid] = position.distanceFromStart;
+		this.speeds[boid] = speed;
+		this.traveledDistances[boid] = 0d;
+		if (this.paths[boid] == null) {
+			this.paths[boid] = new Tour();
+		} else {
+			this.paths[boid].clear();
+		}
+		this.paths[boid].offer(position.edge.getFrom());
+		this.rands[boid] = this.rand.split();
+		this.explorerCount++;
+		return boid;
+	}
+
+	/**
+	 * Moves every boid once.
+	 */
+	public void tick() {
+		buildSightBuckets();
+
+		for (int boid = 0; boid < this.slotCount; boid++) {
+			byte state = this.states[boid];
+			if (state == EXPLORER) {
+				move(boid, this.speeds[boid]);
+			} else if (state == ACHIEVER) {
+				// a better boid may speed this one up, but only from the next tick
+				double speed = this.speeds[boid];
+				followBetterAchievers(boid);
+				move(boid, speed);
+			}
+		}
+	}
+
+	/**
+	 * Counts all boids.
+	 *
+	 * @return the number of boids
+	 */
+	public int size() {
+		return this.explorerCount + this.achieverCount;
+	}
+
+	/**
+	 * Gets the number of achievers.
+	 *
+	 * @return the achiever count
+	 */
+	public int getAchieverCount() {
+		return this.achieverCount;
+	}
+
+	/**
+	 * Gets the number of boid ids used so far. Ids below it may belong to dead boids, with the {@link #FREE} state.
+	 *
+	 * @return the slot count
+	 */
+	public int getSlotCount() {
+		return this.slotCount;
+	}
+
+	/**
+	 * Gets the state of a boid.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @return the state
+	 */
+	public byte getState(int boid) {
+		return this.states[boid];
+	}
+
+	/**
+	 * Gets the distance traveled by a boid.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @return the traveled distance
+	 */
+	public double getTraveledDistance(int boid) {
+		return this.traveledDistances[boid];
+	}
+
+	/**
+	 * Gets the position of a boid.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @return a new position object
+	 */
+	public Position getPosition(int boid) {
+		return new Position(getEdge(boid), this.distances[boid]);
+	}
+
+	/**
+	 * Gets the tour followed by the most achievers, with its density over all boids, kept up to date as achievers
+	 * change tours. Among tours with the same density, the one that got to it first wins.
+	 *
+	 * @return the most dense path, read-only, or null if no tour is followed
+	 */
+	public SortableKeyValue<Tour, Double> getMostDensePath() {
+		TourRanking.Entry mostFollowed = this.tourRanking.getMostFollowed();
+		if (mostFollowed == null) {
+			return null;
+		}
+		return new SortableKeyValue<Tour, Double>(mostFollowed.tour, mostFollowed.population / (double) size());
+	}
+
+	/**
+	 * Gets the tours followed by achievers, with how many follow each.
+	 *
+	 * @return the tours, sorted by population
+	 */
+	public List<SortableKeyValue<Tour, Integer>> getAllPaths() {
+		ArrayList<SortableKeyValue<Tour, Integer>> toursPopulation = new ArrayList<SortableKeyValue<Tour, Integer>>();
+		for (TourRanking.Entry tour : this.tours) {
+			if (tour.population > 0) {
+				toursPopulation.add(new SortableKeyValue<Tour, Integer>(tour.tour, tour.population));
+			}
+		}
+
+		Collections.sort(toursPopulation);
+		return toursPopulation;
+	}
+
+	/**
+	 * Gets a free slot for a new boid, growing the arrays if needed.
+	 *
+	 * @return the slot
+	 */
+	private int allocateSlot() {
+		if (this.freeSlotCount > 0) {
+			return this.freeSlots[--this.freeSlotCount];
+		}
+
+		if (this.slotCount == this.states.length) {
+			int capacity = this.slotCount * 2;
+			this.states = Arrays.copyOf(this.states, capacity);
+			this.edgeIds = Arrays.copyOf(this.edgeIds, capacity);
+			this.distances = Arrays.copyOf(this.distances, capacity);
+			this.speeds = Arrays.copyOf(this.speeds, capacity);
+			this.traveledDistances = Arrays.copyOf(this.traveledDistances, capacity);
+			this.paths = Arrays.copyOf(this.paths, capacity);
+			this.rands = Arrays.copyOf(this.rands, capacity);
+			this.tourIds = Arrays.copyOf(this.tourIds, capacity);
+			this.tourCursors = Arrays.copyOf(this.tourCursors, capacity);
+		}
+		return this.slotCount++;
+	}
+
+	/**
+	 * Gets the edge where a boid is.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @return the edge
+	 */
+	private Edge getEdge(int boid) {
+		return this.graph.getEdgeById(this.edgeIds[boid]);
+	}
+
+	/**
+	 * Increments the occupancy of the segment where a boid is.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 */
+	private void occupy(int boid, Edge edge) {
+		this.graph.incrementOccupancy(edge, this.graph.getSegmentIndexForDistance(edge, this.distances[boid]));
+	}
+
+	/**
+	 * Decrements the occupancy of the segment where a boid is.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 */
+	private void vacate(int boid, Edge edge) {
+		this.graph.decrementOccupancy(edge, this.graph.getSegmentIndexForDistance(edge, this.distances[boid]));
+	}
+
+	/**
+	 * Moves a boid to another place, handling the occupancy changes.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the new edge
+	 * @param distanceFromStart
+	 *            the new distance from the start of the edge
+	 */
+	private void setPosition(int boid, Edge edge, double distanceFromStart) {
+		vacate(boid, getEdge(boid));
+		this.edgeIds[boid] = edge.getId();
+		this.distances[boid] = distanceFromStart;
+		occupy(boid, edge);
+	}
+
+	/**
+	 * Try to move a boid, if it can. See {@link Boid#tryToMove(double)}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param distance
+	 *            the distance
+	 */
+	private void move(int boid, double distance) {
+		Edge edge = getEdge(boid);
+		double distanceFromStart = this.distances[boid];
+		// check if you are going to cross the edge
+		if (Double.compare(edge.getLength() - distanceFromStart, distance) >= 0) {
+			// nope, you will move entirely inside the current edge
+			int nextWouldBeSegment = this.graph.getSegmentIndexForDistance(edge, distanceFromStart + distance);
+			if (!this.graph.isSegmentFull(edge, nextWouldBeSegment)) {
+				moveDistance(boid, edge, distance);
+			} else {
+				int currentSegment = this.graph.getSegmentIndexForDistance(edge, distanceFromStart);
+				moveToFarthestAvailableLocation(boid, edge, currentSegment, nextWouldBeSegment);
+			}
+		} else if (this.states[boid] == EXPLORER) {
+			decideAsExplorer(boid, edge);
+		} else {
+			decideAsAchiever(boid, edge);
+		}
+	}
+
+	/**
+	 * Moves a boid the given distance within its edge.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 * @param distance
+	 *            the distance
+	 */
+	private void moveDistance(int boid, Edge edge, double distance) {
+		vacate(boid, edge);
+
+		this.distances[boid] += distance;
+		if (this.distances[boid] > edge.getLength()) {
+			throw new RuntimeException("Deslocate limit error");
+		}
+
+		occupy(boid, edge);
+
+		this.traveledDistances[boid] += distance;
+	}
+
+	/**
+	 * Moves a boid to the farthest available location between two segments of its edge.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 * @param current
+	 *            the index of the current segment
+	 * @param limit
+	 *            the index of the limit segment
+	 */
+	private void moveToFarthestAvailableLocation(int boid, Edge edge, int current, int limit) {
+		int farthestAvailable = this.graph.getFarthestAvailableSegmentIndex(edge, current, limit);
+		double endOfTheSegment = this.graph.getSegmentEnd(edge, farthestAvailable);
+		// get to right before the end of the segment
+		double diff = endOfTheSegment - FlockingGraph.MINIMUM_DISTANCE_MARGIN - this.distances[boid];
+
+		// move only as far as possible, and don't move back due to floating point imprecision
+		double distance = diff < this.speeds[boid] ? diff : this.speeds[boid];
+		if (distance > 0d) {
+			moveDistance(boid, edge, distance);
+		}
+	}
+
+	/**
+	 * Try to move a boid to the next edge. See {@link Boid#tryToMoveToNextEdge(Edge)}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 * @param next
+	 *            the next edge
+	 */
+	private void moveToNextEdge(int boid, Edge edge, Edge next) {
+		double distanceWithin = edge.getLength() - this.distances[boid];
+		double distanceOnNext = Math.min(this.speeds[boid] - distanceWithin, next.getLength());
+
+		int maxSegmentNext = this.graph.getSegmentIndexForDistance(next, distanceOnNext);
+		int farthestAvailableOnNext = this.graph.getFarthestAvailableSegmentIndex(next, 0, maxSegmentNext);
+
+		if (this.graph.isSegmentFull(next, farthestAvailableOnNext)) {
+			// no space on the next edge, the location crossed is left for the next attempt
+			if (this.states[boid] == EXPLORER) {
+				this.paths[boid].removeLast();
+			}
+
+			// move as far as you can inside
+			int minSegmentHere = this.graph.getSegmentIndexForDistance(edge, this.distances[boid]);
+			double maxDistanceHere = this.distances[boid] + distanceWithin - FlockingGraph.MINIMUM_DISTANCE_MARGIN;
+			int maxSegmentHere = minSegmentHere;
+			if (Double.compare(this.distances[boid], maxDistanceHere) < 0) {
+				maxSegmentHere = this.graph.getSegmentIndexForDistance(edge, maxDistanceHere);
+			}
+			moveToFarthestAvailableLocation(boid, edge, minSegmentHere, maxSegmentHere);
+		} else {
+			double farthestAvailableEnd = this.graph.getSegmentEnd(next, farthestAvailableOnNext);
+			if (distanceOnNext >= farthestAvailableEnd) {
+				// the potential movement is greater than the farthest available position, move less
+				distanceOnNext = farthestAvailableEnd - FlockingGraph.MINIMUM_DISTANCE_MARGIN;
+			}
+			this.traveledDistances[boid] += distanceOnNext;
+			setPosition(boid, next, distanceOnNext);
+		}
+	}
+
+	/**
+	 * Decide where an explorer goes next. See {@link Boid#decide()}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 */
+	private void decideAsExplorer(int boid, Edge edge) {
+		int to = edge.getTo();
+		Tour path = this.paths[boid];
+		// passing a new location in the next move, it should be in the path taken
+		boolean added = BoidRules.offerCrossedNode(this.graph, path, to);
+
+		if (GOAL.isGoal(this.graph, path)) {
+			// the tour is complete, respawn as an achiever if there is space at the start
+			if (!this.graph.isSegmentFull(BoidRules.getRespawnEdge(this.graph, path), 0)) {
+				becomeAchiever(boid);
+			} else if (added) {
+				path.removeLast();
+			}
+			return;
+		}
+
+		int count = generatePossibleNextNodes(boid, to);
+		if (count == 0) {
+			// nowhere to go, dead end
+			die(boid, edge);
+			return;
+		}
+
+		int next = selectNextNode(boid, to, count);
+		if (next != TraditionalGraph.INVALID_VALUE) {
+			moveToNextEdge(boid, edge, this.graph.getEdge(to, next));
+		}
+	}
+
+	/**
+	 * Generates the possible next nodes of an explorer into {@link #candidates}. See
+	 * {@link Boid#generatePossibleNextEdges(List)}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param from
+	 *            the node the explorer is crossing
+	 * @return the number of possible next nodes
+	 */
+	private int generatePossibleNextNodes(int boid, int from) {
+		int size = this.graph.getCandidateList(from).length;
+		if (this.candidates.length < size) {
+			this.candidates = new int[size];
+			this.probabilities = new double[size];
+		}
+		return BoidRules.generatePossibleNextNodes(this.graph, this.paths[boid], from, this.candidates);
+	}
+
+	/**
+	 * Selects the next node among the possible ones, with a roulette wheel weighted by the choice probabilities. See
+	 * {@link Boid#selectNextEdge(List)}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param from
+	 *            the node the explorer is crossing
+	 * @param count
+	 *            the number of possible next nodes
+	 * @return the next node, or {@link TraditionalGraph#INVALID_VALUE} if none can be chosen
+	 */
+	private int selectNextNode(int boid, int from, int count) {
+		double totalSum = 0d;
+		for (int i = 0; i < count; i++) {
+			Edge edge = this.graph.getEdge(from, this.candidates[i]);
+			double probability = BoidRules.getChoiceProbability(this.graph, edge, this.distanceChoiceWeight,
+					this.occupancyChoiceWeight);
+			if (probability > 0d) {
+				totalSum += probability;
+			} else {
+				probability = 0d;
+			}
+			this.probabilities[i] = probability;
+		}
+
+		int selected = WeightedRouletteWheelSelector.select(this.probabilities, count, totalSum, this.rands[boid]);
+		return selected < 0 ? TraditionalGraph.INVALID_VALUE : this.candidates[selected];
+	}
+
+	/**
+	 * Turns an explorer into an achiever following the tour it found.
+	 *
+	 * @param boid
+	 *            the boid id
+	 */
+	private void becomeAchiever(int boid) {
+		int tourId = registerTour(this.paths[boid]);
+		this.states[boid] = ACHIEVER;
+		this.explorerCount--;
+		this.achieverCount++;
+		this.tourIds[boid] = tourId;
+		this.speeds[boid] *= AchieverBoid.getSpeedModifier(this.tourCosts[tourId]);
+		this.paths[boid].clear();
+
+		respawn(boid);
+	}
+
+	/**
+	 * Registers one more achiever following a tour.
+	 *
+	 * @param path
+	 *            the tour, copied if it was not found before
+	 * @return the tour id
+	 */
+	private int registerTour(Tour path) {
+		TourKey key = TourKey.of(path);
+		Integer tourId = this.tourIdsByTour.get(key);
+		if (tourId == null) {
+			Tour tour = new Tour(path);
+			tour.calculateCost(this.graph);
+			tour.makeReadOnly();
+
+			tourId = this.tours.size();
+			if (tourId == this.tourCosts.length) {
+				this.tourCosts = Arrays.copyOf(this.tourCosts, tourId * 2);
+			}
+			this.tourCosts[tourId] = tour.getLastCalculatedCost();
+			this.tours.add(new TourRanking.Entry(tour));
+			this.tourIdsByTour.put(key, tourId);
+		}
+		this.tourRanking.increment(this.tours.get(tourId));
+		return tourId;
+	}
+
+	/**
+	 * Puts an achiever back at the start of its tour. See {@link AchieverBoid#respawn()}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 */
+	private void respawn(int boid) {
+		setPosition(boid, BoidRules.getRespawnEdge(this.graph, this.tours.get(this.tourIds[boid]).tour), 0d);
+		this.tourCursors[boid] = BoidRules.FIRST_STOP;
+	}
+
+	/**
+	 * Decide where an achiever goes next, the next node of its tour. See {@link AchieverBoid#decide()}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 */
+	private void decideAsAchiever(int boid, Edge edge) {
+		Tour tour = this.tours.get(this.tourIds[boid]).tour;
+		int cursor = this.tourCursors[boid];
+		if (cursor >= tour.size()) {
+			// the tour is done, respawn if there is space at the start
+			if (!this.graph.isSegmentFull(BoidRules.getRespawnEdge(this.graph, tour), 0)) {
+				respawn(boid);
+			}
+			return;
+		}
+
+		Edge next = this.graph.getEdge(edge.getTo(), tour.get(cursor));
+		if (next.getLength() < 0) {
+			throw new RuntimeException("Bad edge");
+		}
+
+		int currentEdgeId = this.edgeIds[boid];
+		moveToNextEdge(boid, edge, next);
+
+		// if it really moved, it consumed one node of its tour
+		if (this.edgeIds[boid] != currentEdgeId) {
+			this.tourCursors[boid]++;
+		}
+	}
+
+	/**
+	 * Makes an achiever follow the tour of any achiever in sight with a better one. See
+	 * {@link AchieverBoid#tryToMove(double)}.
+	 *
+	 * @param boid
+	 *            the boid id
+	 */
+	private void followBetterAchievers(int boid) {
+		Edge edge = getEdge(boid);
+		int to = edge.getTo();
+		for (int i = this.sightBucketStarts[to]; i < this.sightBucketStarts[to + 1]; i++) {
+			int other = this.sightBuckets[i];
+			if (other == boid || this.states[other] != ACHIEVER) {
+				continue;
+			}
+
+			Edge otherEdge = getEdge(other);
+			if (!BoidRules.canSee(this.graph, this.visionRange, edge, this.distances[boid], otherEdge,
+					this.distances[other])) {
+				continue;
+			}
+
+			int tourId = this.tourIds[boid];
+			int otherTourId = this.tourIds[other];
+			if (BoidRules.isBetterAchiever(this.tourCosts[tourId], this.speeds[boid], this.tourCosts[otherTourId],
+					this.speeds[other])) {
+				// the other boid is better, follow it
+				this.tourRanking.decrement(this.tours.get(tourId));
+				this.tourRanking.increment(this.tours.get(otherTourId));
+				this.tourIds[boid] = otherTourId;
+				this.speeds[boid] = Math.max(this.speeds[boid], this.speeds[other]);
+
+				// if the other boid left the node this one goes to, go where the other boid goes
+				this.tourCursors[boid] = BoidRules.getNextStopWhenFollowing(to, this.tourCursors[other],
+						otherEdge.getFrom());
+			}
+		}
+	}
+
+	/**
+	 * Groups the achievers by the nodes of their edges, so each achiever only checks the ones near the node ahead.
+	 */
+	private void buildSightBuckets() {
+		int[] starts = this.sightBucketStarts;
+		Arrays.fill(starts, 0);
+		if (this.sightBuckets.length < 2 * this.achieverCount) {
+			this.sightBuckets = new int[2 * this.achieverCount];
+		}
+
+		// count the achievers per node, shifted by one to turn the counts into starts
+		for (int boid = 0; boid < this.slotCount; boid++) {
+			if (this.states[boid] == ACHIEVER) {
+				Edge edge = getEdge(boid);
+				starts[edge.getFrom() + 1]++;
+				if (edge.getTo() != edge.getFrom()) {
+					starts[edge.getTo() + 1]++;
+				}
+			}
+		}
+		for (int node = 1; node < starts.length; node++) {
+			starts[node] += starts[node - 1];
+		}
+
+		// fill the buckets, using the starts as cursors and shifting them back afterwards
+		for (int boid = 0; boid < this.slotCount; boid++) {
+			if (this.states[boid] == ACHIEVER) {
+				Edge edge = getEdge(boid);
+				this.sightBuckets[starts[edge.getFrom()]++] = boid;
+				if (edge.getTo() != edge.getFrom()) {
+					this.sightBuckets[starts[edge.getTo()]++] = boid;
+				}
+			}
+		}
+		for (int node = starts.length - 1; node > 0; node--) {
+			starts[node] = starts[node - 1];
+		}
+		starts[0] = 0;
+	}
+
+	/**
+	 * Kills an explorer.
+	 *
+	 * @param boid
+	 *            the boid id
+	 * @param edge
+	 *            the edge where the boid is
+	 */
+	private void die(int boid, Edge edge) {
+		vacate(boid, edge);
+		this.states[boid] = FREE;
+		this.explorerCount--;
+
+		if (this.freeSlotCount == this.freeSlots.length) {
+			this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotCount * 2);
+		}
+		this.freeSlots[this.freeSlotCount++] = boid;
+	}
+
+}
@@ -0,0 +1,202 @@
+package agent;
+
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Tour;
+import graph.TraditionalGraph;
+
+/**
+ * The rules the boids follow to choose where to go and whom to follow. They are shared by the boid objects
+ * ({@link Boid} and {@link AchieverBoid}) and the kernels of {@link BoidPopulation}, so a rule changed for one changes
+ * for both.
+ */
+final class BoidRules {
+
+	/** The position in its tour of the node an achiever goes to after respawning on the first edge of the tour. */
+	static final int FIRST_STOP = 2;
+
+	/**
+	 * Not instantiable, the rules are functions of the boid state.
+	 */
+	private BoidRules() {
+	}
+
+	/**
+	 * Adds the node a boid is crossing to its path, unless the path already ends there (the boid waited at the node
+	 * before) and the node has no loop.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param pathTaken
+	 *            the path taken by the boid
+	 * @param node
+	 *            the node crossed
+	 * @return true, if the node was added
+	 */
+	static boolean offerCrossedNode(FlockingGraph graph, Tour pathTaken, int node) {
+		int lastLocation = pathTaken.lastLocation();
+		if (lastLocation != node || graph.getEdgeLength(lastLocation, lastLocation) != -1) {
+			pathTaken.offer(node);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Generates the nodes an explorer may go to next from the node it is crossing. The unvisited candidates come
+	 * first. When every candidate was visited, the explorer goes back to the start if it visited every node, or may go
+	 * to any candidate otherwise.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param pathTaken
+	 *            the path taken by the explorer
+	 * @param from
+	 *            the node the explorer is crossing
+	 * @param nodes
+	 *            where to put the possible next nodes, at least as long as the candidate list of the node
+	 * @return the number of possible next nodes
+	 */
+	static int generatePossibleNextNodes(FlockingGraph graph, Tour pathTaken, int from, int[] nodes) {
+		int[] closestNeighbors = graph.getCandidateList(from);
+
+		// prioritize the unvisited neighbors
+		int count = 0;
+		for (int neighbor : closestNeighbors) {
+			if (!pathTaken.contains(neighbor)) {
+				nodes[count++] = neighbor;
+			}
+		}
+
+		if (count == 0 && closestNeighbors.length > 0) {
+			// all neighbors were visited, after visiting everywhere return to the start
+			int startNode = pathTaken.firstLocation();
+			if (pathTaken.getVisitedCount() == graph.getNumberOfNodes()
+					&& graph.getEdgeId(from, startNode) != TraditionalGraph.INVALID_VALUE) {
+				nodes[count++] = startNode;
+			} else {
+				System.arraycopy(closestNeighbors, 0, nodes, 0, closestNeighbors.length);
+				count = closestNeighbors.length;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the weight of an edge in the choice of the next one, before normalizing. Shorter edges with more free space
+	 * at their start weigh more.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param edge
+	 *            the edge
+	 * @param distanceChoiceWeight
+	 *            the distance choice weight
+	 * @param occupancyChoiceWeight
+	 *            the occupancy choice weight
+	 * @return the partial choice probability
+	 */
+	static double getChoiceProbability(FlockingGraph graph, Edge edge, double distanceChoiceWeight,
+			double occupancyChoiceWeight) {
+		// check occupation values for the first segment of this edge
+		int freeSpace = graph.getEdgeCapacity(edge) - graph.getOccupancy(edge, 0);
+		return Math.pow(freeSpace, occupancyChoiceWeight) * Math.pow(1d / edge.getLength(), distanceChoiceWeight);
+	}
+
+	/**
+	 * Gets the edge where an achiever respawns, the first edge of its tour.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param tour
+	 *            the tour
+	 * @return the first edge
+	 */
+	static Edge getRespawnEdge(FlockingGraph graph, Tour tour) {
+		return graph.getEdge(tour.get(0), tour.get(1));
+	}
+
+	/**
+	 * Tells if an achiever should follow another: the other has a shorter tour, or the same length and more speed.
+	 * 
+	 * @param pathDistance
+	 *            the length of the tour of the achiever
+	 * @param speed
+	 *            the speed of the achiever
+	 * @param otherPathDistance
+	 *            the length of the tour of the other achiever
+	 * @param otherSpeed
+	 *            the speed of the other achiever
+	 * @return true, if the other achiever is better
+	 */
+	static boolean isBetterAchiever(double pathDistance, double speed, double otherPathDistance, double otherSpeed) {
+		int comparison = Double.compare(otherPathDistance, pathDistance);
+		return comparison < 0 || (comparison == 0 && otherSpeed > speed);
+	}
+
+	/**
+	 * Gets the position in the tour of another achiever of the node an achiever goes to next when it starts following
+	 * it. That is the next stop of the other achiever, unless the other already left the node this one goes to, then
+	 * it is the node where the other is going.
+	 * 
+	 * @param to
+	 *            the node the achiever goes to
+	 * @param otherNextStop
+	 *            the next stop of the other achiever
+	 * @param otherFrom
+	 *            the node the other achiever comes from
+	 * @return the next stop
+	 */
+	static int getNextStopWhenFollowing(int to, int otherNextStop, int otherFrom) {
+		return to == otherFrom ? otherNextStop - 1 : otherNextStop;
+	}
+
+	/**
+	 * Tells if an achiever sees another. Within its edge, it sees ahead up to its vision range. If the range reaches
+	 * past the end node, it sees everything ahead on its edge and the start of the edges between the end node and its
+	 * neighbors.
+	 * 
+	 * @param graph
+	 *            the graph
+	 * @param visionRange
+	 *            the vision range
+	 * @param edge
+	 *            the edge where the achiever is
+	 * @param distanceFromStart
+	 *            the distance of the achiever from the start of its edge
+	 * @param otherEdge
+	 *            the edge where the other achiever is
+	 * @param otherDistanceFromStart
+	 *            the distance of the other achiever from the start of its edge
+	 * @return true, if the other achiever is visible
+	 */
+	static boolean canSee(FlockingGraph graph, double visionRange, Edge edge, double distanceFromStart, Edge otherEdge,
+			double otherDistanceFromStart) {
+		double distanceToEdgeEnd = edge.getLength() - distanceFromStart;
+		double difference = otherDistanceFromStart - distanceFromStart;
+		boolean sameEdge = otherEdge.isSameEdge(edge);
+
+		if (Double.compare(distanceToEdgeEnd, visionRange) >= 0) {
+			// vision is completely inside the edge
+			return sameEdge && difference >= 0d && difference <= visionRange;
+		}
+		if (sameEdge) {
+			return difference >= 0d;
+		}
+
+		// vision exceeds the edge, the other boid must be on an edge between the node ahead and a neighbor
+		int to = edge.getTo();
+		int otherNode;
+		if (otherEdge.getFrom() == to) {
+			otherNode = otherEdge.getTo();
+		} else if (otherEdge.getTo() == to) {
+			otherNode = otherEdge.getFrom();
+		} else {
+			return false;
+		}
+		if (graph.getEdgeId(to, otherNode) == TraditionalGraph.INVALID_VALUE) {
+			return false;
+		}
+		return visionRange - distanceToEdgeEnd >= otherDistanceFromStart;
+	}
+}
@@ -0,0 +1,476 @@
+package agent;
+
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.TraditionalGraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of boids by the directed edge they are on. Each edge keeps its boids sorted by distance from the start, and
+ * each node knows the edges around it that have boids, so the boids within a range of distances on an edge, or on the
+ * edges around a node, are found without looking at the boids elsewhere.
+ *
+ * The index has to be told when an indexed boid moves (see {@link #update(Boid)}). A boid can only be in one index at
+ * a time, the one that owns its bucket.
+ *
+ * @param <B>
+ *            the type of the boids indexed
+ */
+final class BoidsByEdge<B extends Boid> {
+
+	/** The initial capacity of a bucket and of the list of active buckets around a node. */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/**
+	 * The boids on one directed edge, sorted by distance from the start. Buckets are created on first use and kept,
+	 * empty or not.
+	 */
+	static final class Bucket {
+
+		/** The index this bucket belongs to. */
+		final BoidsByEdge<?> owner;
+
+		/** The start node of the edge. */
+		final int from;
+
+		/** The end node of the edge. */
+		final int to;
+
+		/** The boids, sorted by distance. */
+		Boid[] boids = new Boid[INITIAL_CAPACITY];
+
+		/** The distance of each boid from the start of the edge, when last indexed. */
+		double[] distances = new double[INITIAL_CAPACITY];
+
+		/** The number of boids. */
+		int size;
+
+		/** The index of this bucket among the active buckets of the start node, or -1 while empty. */
+		int fromSlot = -1;
+
+		/** The index of this bucket among the active buckets of the end node, or -1 while empty. */
+		int toSlot = -1;
+
+		/**
+		 * Instantiates a new bucket.
+		 *
+		 * @param owner
+		 *            the index this bucket belongs to
+		 * @param from
+		 *            the start node
+		 * @param to
+		 *            the end node
+		 */
+		Bucket(BoidsByEdge<?> owner, int from, int to) {
+			this.owner = owner;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Finds the first slot with a distance not lower than the given one.
+		 *
+		 * @param distance
+		 *            the distance
+		 * @return the slot, or the size if there is none
+		 */
+		int lowerBound(double distance) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.distances[middle] < distance) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Puts a boid and its distance in a slot.
+		 *
+		 * @param slot
+		 *            the slot
+		 * @param boid
+		 *            the boid
+		 * @param distance
+		 *            the distance
+		 */
+		void put(int slot, Boid boid, double distance) {
+			this.boids[slot] = boid;
+			this.distances[slot] = distance;
+			boid.indexedSlot = slot;
+		}
+	}
+
+	/** The graph where the boids are. */
+	private final FlockingGraph graph;
+
+	/** The buckets by edge id, null when the graph has too many edges to index them all. */
+	private Bucket[] buckets;
+
+	/** The buckets by edge id of graphs with too many edges to index them all. Null otherwise. */
+	private HashMap<Integer, Bucket> sparseBuckets;
+
+	/** The buckets with boids around each node, as start or end node. */
+	private Bucket[][] activeBuckets;
+
+	/** The number of buckets with boids around each node. */
+	private int[] activeCounts;
+
+	/**
+	 * Instantiates a new index for the boids of a graph.
+	 *
+	 * @param graph
+	 *            the graph
+	 */
+	BoidsByEdge(FlockingGraph graph) {
+		this.graph = graph;
+		int numberOfEdges = graph.getNumberOfEdges();
+		// above this many edges, buckets are kept in a map instead of an array indexed by edge id
+		if (numberOfEdges > FlockingGraph.MAX_INDEXED_EDGES) {
+			this.sparseBuckets = new HashMap<Integer, Bucket>();
+		} else {
+			this.buckets = new Bucket[numberOfEdges];
+		}
+		this.activeBuckets = new Bucket[graph.getNumberOfNodes()][];
+		this.activeCounts = new int[graph.getNumberOfNodes()];
+	}
+
+	/**
+	 * Adds a boid where it is now.
+	 *
+	 * @param boid
+	 *            the boid
+	 */
+	void add(B boid) {
+		Bucket bucket = getBucket(boid.pos.edge);
+		if (bucket != null) {
+			insert(bucket, boid, boid.pos.distanceFromStart);
+		}
+	}
+
+	/**
+	 * Removes a boid, if indexed.
+	 *
+	 * @param boid
+	 *            the boid
+	 */
+	void remove(Boid boid) {
+		if (boid.indexedBucket != null) {
+			delete(boid);
+		}
+	}
+
+	/**
+	 * Moves a boid, if indexed, to where it is now.
+	 *
+	 * @param boid
+	 *            the boid
+	 */
+	void update(Boid boid) {
+		Bucket bucket = boid.indexedBucket;
+		if (bucket == null) {
+			return;
+		}
+
+		Edge edge = boid.pos.edge;
+		double distance = boid.pos.distanceFromStart;
+		if (bucket.from != edge.getFrom() || bucket.to != edge.getTo()) {
+			// crossed to another edge
+			delete(boid);
+			Bucket next = getBucket(edge);
+			if (next != null) {
+				insert(next, boid, distance);
+			}
+			return;
+		}
+
+		// same edge, shift it to keep the order, usually by a slot or two
+		int slot = boid.indexedSlot;
+		while (slot + 1 < bucket.size && bucket.distances[slot + 1] < distance) {
+			bucket.put(slot, bucket.boids[slot + 1], bucket.distances[slot + 1]);
+			slot++;
+		}
+		while (slot > 0 && bucket.distances[slot - 1] > distance) {
+			bucket.put(slot, bucket.boids[slot - 1], bucket.distances[slot - 1]);
+			slot--;
+		}
+		bucket.put(slot, boid, distance);
+	}
+
+	/**
+	 * Adds to a list the boids on an edge ahead of a distance from its start, up to a range. The range is compared
+	 * with the difference of distances, like a boid measures what it sees.
+	 *
+	 * @param from
+	 *            the start node of the edge
+	 * @param to
+	 *            the end node of the edge
+	 * @param origin
+	 *            the distance from the start where the range begins (inclusive)
+	 * @param range
+	 *            the range (inclusive)
+	 * @param exclude
+	 *            a boid to leave out, usually the one looking
+	 * @param result
+	 *            the list where the boids are added
+	 */
+	@SuppressWarnings("unchecked")
+	void collect(int from, int to, double origin, double range, Boid exclude, List<B> result) {
+		int id = getEdgeId(from, to);
+		if (id == TraditionalGraph.INVALID_VALUE) {
+			return;
+		}
+		Bucket bucket = getBucket(id, from, to, false);
+		if (bucket == null) {
+			return;
+		}
+		for (int i = bucket.lowerBound(origin); i < bucket.size && bucket.distances[i] - origin <= range; i++) {
+			if (bucket.boids[i] != exclude) {
+				result.add((B) bucket.boids[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds to a list the boids on the edges between a node and its neighbors, in either direction, within a distance
+	 * from the start of their edge. Only neighbors reachable from the node count, like in
+	 * {@link FlockingGraph#getNeighborsOf(int)}.
+	 *
+	 * @param node
+	 *            the node
+	 * @param except
+	 *            the neighbor to skip, or -1 to skip none
+	 * @param maxDistance
+	 *            the maximum distance (inclusive)
+	 * @param exclude
+	 *            a boid to leave out, usually the one looking
+	 * @param result
+	 *            the list where the boids are added
+	 */
+	@SuppressWarnings("unchecked")
+	void collectAround(int node, int except, double maxDistance, Boid exclude, List<B> result) {
+		Bucket[] around = this.activeBuckets[node];
+		for (int b = 0; b < this.activeCounts[node]; b++) {
+			Bucket bucket = around[b];
+			int neighbor = bucket.from == node ? bucket.to : bucket.from;
+			if (neighbor == except) {
+				continue;
+			}
+			if (bucket.to == node && getEdgeId(node, neighbor) == TraditionalGraph.INVALID_VALUE) {
+				// not a neighbor, only reaches the node
+				continue;
+			}
+			for (int i = 0; i < bucket.size && bucket.distances[i] <= maxDistance; i++) {
+				if (bucket.boids[i] != exclude) {
+					result.add((B) bucket.boids[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds to a list the boids on the edges leaving a node within a distance from the start of their edge.
+	 *
+	 * @param node
+	 *            the node
+	 * @param maxDistance
+	 *            the maximum distance (inclusive)
+	 * @param exclude
+	 *            a boid to leave out, usually the one looking
+	 * @param result
+	 *            the list where the boids are added
+	 */
+	@SuppressWarnings("unchecked")
+	void collectLeaving(int node, double maxDistance, Boid exclude, List<B> result) {
+		Bucket[] around = this.activeBuckets[node];
+		for (int b = 0; b < this.activeCounts[node]; b++) {
+			Bucket bucket = around[b];
+			if (bucket.from != node) {
+				continue;
+			}
+			for (int i = 0; i < bucket.size && bucket.distances[i] <= maxDistance; i++) {
+				if (bucket.boids[i] != exclude) {
+					result.add((B) bucket.boids[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inserts a boid into a bucket, keeping the order.
+	 *
+	 * @param bucket
+	 *            the bucket
+	 * @param boid
+	 *            the boid
+	 * @param distance
+	 *            the distance of the boid
+	 */
+	private void insert(Bucket bucket, Boid boid, double distance) {
+		if (bucket.size == bucket.boids.length) {
+			bucket.boids = Arrays.copyOf(bucket.boids, bucket.size * 2);
+			bucket.distances = Arrays.copyOf(bucket.distances, bucket.size * 2);
+		}
+		int slot = bucket.size;
+		while (slot > 0 && bucket.distances[slot - 1] > distance) {
+			bucket.put(slot, bucket.boids[slot - 1], bucket.distances[slot - 1]);
+			slot--;
+		}
+		bucket.put(slot, boid, distance);
+		bucket.size++;
+		boid.indexedBucket = bucket;
+
+		if (bucket.size == 1) {
+			bucket.fromSlot = activate(bucket.from, bucket);
+			bucket.toSlot = bucket.from == bucket.to ? -1 : activate(bucket.to, bucket);
+		}
+	}
+
+	/**
+	 * Deletes a boid from its bucket.
+	 *
+	 * @param boid
+	 *            the boid
+	 */
+	private void delete(Boid boid) {
+		Bucket bucket = boid.indexedBucket;
+		for (int slot = boid.indexedSlot; slot + 1 < bucket.size; slot++) {
+			bucket.put(slot, bucket.boids[slot + 1], bucket.distances[slot + 1]);
+		}
+		bucket.size--;
+		bucket.boids[bucket.size] = null;
+		boid.indexedBucket = null;
+		boid.indexedSlot = -1;
+
+		if (bucket.size == 0) {
+			deactivate(bucket.from, bucket.fromSlot);
+			bucket.fromSlot = -1;
+			if (bucket.toSlot >= 0) {
+				deactivate(bucket.to, bucket.toSlot);
+				bucket.toSlot = -1;
+			}
+		}
+	}
+
+	/**
+	 * Adds a bucket to the active buckets of a node.
+	 *
+	 * @param node
+	 *            the node
+	 * @param bucket
+	 *            the bucket
+	 * @return the index of the bucket among the active buckets of the node
+	 */
+	private int activate(int node, Bucket bucket) {
+		Bucket[] around = this.activeBuckets[node];
+		int count = this.activeCounts[node];
+		if (around == null) {
+			around = new Bucket[INITIAL_CAPACITY];
+			this.activeBuckets[node] = around;
+		} else if (count == around.length) {
+			around = Arrays.copyOf(around, count * 2);
+			this.activeBuckets[node] = around;
+		}
+		around[count] = bucket;
+		this.activeCounts[node] = count + 1;
+		return count;
+	}
+
+	/**
+	 * Removes a bucket from the active buckets of a node, moving the last one into its place.
+	 *
+	 * @param node
+	 *            the node
+	 * @param slot
+	 *            the index of the bucket among the active buckets of the node
+	 */
+	private void deactivate(int node, int slot) {
+		Bucket[] around = this.activeBuckets[node];
+		int last = --this.activeCounts[node];
+		Bucket moved = around[last];
+		around[slot] = moved;
+		around[last] = null;
+		if (moved.from == node) {
+			moved.fromSlot = slot;
+		} else {
+			moved.toSlot = slot;
+		}
+	}
+
+	/**
+	 * Gets the bucket of an edge where a boid is, creating it if missing.
+	 *
+	 * @param edge
+	 *            the edge
+	 * @return the bucket, or null if the edge is not part of the graph
+	 */
+	private Bucket getBucket(Edge edge) {
+		int id = edge.getId();
+		if (id == TraditionalGraph.INVALID_VALUE) {
+			id = getEdgeId(edge.getFrom(), edge.getTo());
+			if (id == TraditionalGraph.INVALID_VALUE) {
+				return null;
+			}
+		}
+		return getBucket(id, edge.getFrom(), edge.getTo(), true);
+	}
+
+	/**
+	 * Gets the bucket of an edge.
+	 *
+	 * @param id
+	 *            the edge id
+	 * @param from
+	 *            the start node of the edge
+	 * @param to
+	 *            the end node of the edge
+	 * @param create
+	 *            whether to create the bucket if missing
+	 * @return the bucket, or null if missing and not created
+	 */
+	private Bucket getBucket(int id, int from, int to, boolean create) {
+		Bucket bucket;
+		if (this.sparseBuckets != null) {
+			bucket = this.sparseBuckets.get(id);
+		} else if (id < this.buckets.length) {
+			bucket = this.buckets[id];
+		} else {
+			// edges were added to the graph since the index was created
+			if (!create) {
+				return null;
+			}
+			this.buckets = Arrays.copyOf(this.buckets, Math.max(id + 1, this.graph.getNumberOfEdges()));
+			bucket = null;
+		}
+
+		if (bucket == null && create) {
+			bucket = new Bucket(this, from, to);
+			if (this.sparseBuckets != null) {
+				this.sparseBuckets.put(id, bucket);
+			} else {
+				this.buckets[id] = bucket;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Gets the id of an edge.
+	 *
+	 * @param from
+	 *            the start node
+	 * @param to
+	 *            the end node
+	 * @return the edge id, or {@link TraditionalGraph#INVALID_VALUE} if there is no such edge
+	 */
+	private int getEdgeId(int from, int to) {
+		return this.graph.getEdgeId(from, to);
+	}
+}
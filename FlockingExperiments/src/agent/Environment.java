@@ -2,14 +2,12 @@ package agent;
 
 import graph.FlockingGraph;
 import graph.Tour;
+import graph.TourKey;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import util.SortableKeyValue;
 
@@ -18,17 +16,53 @@ import util.SortableKeyValue;
  */
 public class Environment {
 
-	/** The free boids (explorers). */
-	private Set<Boid> freeBoids;
+	/** The boids alive at the last tick boundary, explorers and achievers, in the order they joined. */
+	private ArrayList<Boid> boids;
 
-	/** The achievers. */
-	private Set<AchieverBoid> achievers;
+	/** The achievers alive at the last tick boundary, in the order they joined. */
+	private ArrayList<AchieverBoid> achievers;
+
+	/** Read-only view of the boids, handed out instead of copies. */
+	private List<Boid> boidsView;
+
+	/** Read-only view of the achievers, handed out instead of copies. */
+	private List<AchieverBoid> achieversView;
+
+	/** The boids that joined since the last tick boundary. */
+	private ArrayList<Boid> pendingAdditions;
+
+	/** Whether some boid of the population died since the last tick boundary. */
+	private boolean pendingRemovals;
+
+	/** The number of boids alive, including the changes not applied yet. */
+	private int boidCount;
+
+	/** The number of achievers alive, including the changes not applied yet. */
+	private int achieverCount;
+
+	/** The achievers of {@link #achievers} by the edge they are on, so they can find each other nearby. */
+	private BoidsByEdge<AchieverBoid> achieversByEdge;
+
+	/** The wollowski boids of {@link #boids} by the edge they are on, so they can find each other nearby. */
+	private BoidsByEdge<WollowskiBoid> wollowskiBoidsByEdge;
 
 	/** The graph. */
 	private FlockingGraph graph;
 
-	/** The populations for tours found. */
-	private HashMap<Tour, Integer> foundToursPopulations;
+	/**
+	 * The populations for tours found, by key, so the same tour started elsewhere or walked backwards counts once. They
+	 * also keep the tours achievers follow, one instance shared by all the achievers following each path.
+	 */
+	private HashMap<TourKey, TourPopulation> foundToursPopulations;
+
+	/** The ranking of the tours of {@link #foundToursPopulations} by population. */
+	private TourRanking tourRanking;
+
+	/** The boids whose move was put off while boids move concurrently, or null if they move one by one. */
+	private List<Boid> deferredMoves;
+
+	/** Whether the boids moving concurrently only propose their moves, leaving the graph untouched. */
+	private boolean proposingMoves;
 
 	/**
 	 * Instantiates a new environment.
@@ -37,71 +71,192 @@ public class Environment {
 	 *            the graph
 	 */
 	public Environment(FlockingGraph graph) {
-		this.freeBoids = new HashSet<>();
-		this.achievers = new HashSet<>();
+		this.boids = new ArrayList<>();
+		this.achievers = new ArrayList<>();
+		this.boidsView = Collections.unmodifiableList(this.boids);
+		this.achieversView = Collections.unmodifiableList(this.achievers);
+		this.pendingAdditions = new ArrayList<>();
+		this.achieversByEdge = new BoidsByEdge<>(graph);
+		this.wollowskiBoidsByEdge = new BoidsByEdge<>(graph);
 		this.graph = graph;
 		this.foundToursPopulations = new HashMap<>();
+		this.tourRanking = new TourRanking();
 	}
 
 	/**
-	 * Adds the new achiever.
+	 * Adds the new achiever. It joins the population at the next tick boundary.
 	 * 
 	 * @param achiever
 	 *            the achiever
 	 */
 	public void addNewAchiever(AchieverBoid achiever) {
-		this.achievers.add(achiever);
+		this.pendingAdditions.add(achiever);
+		this.boidCount++;
+		this.achieverCount++;
 	}
 
 	/**
-	 * Adds the new free boid.
+	 * Adds the new free boid. It joins the population at the next tick boundary.
 	 * 
 	 * @param boid
 	 *            the boid
 	 */
 	public void addNewFreeBoid(Boid boid) {
-		this.freeBoids.add(boid);
+		this.pendingAdditions.add(boid);
+		this.boidCount++;
 	}
 
 	/**
-	 * Boid died.
+	 * Boid died. It leaves the population at the next tick boundary, so it is safe to call while iterating over
+	 * {@link #getAllBoids()}.
 	 * 
 	 * @param boid
 	 *            the boid
 	 */
 	public void boidDied(Boid boid) {
-		this.freeBoids.remove(boid);
+		if (boid.leavingPopulation) {
+			return;
+		}
+		if (boid.populationIndex < 0) {
+			// it never made it into the population
+			if (!this.pendingAdditions.remove(boid)) {
+				return;
+			}
+		} else {
+			boid.leavingPopulation = true;
+			this.pendingRemovals = true;
+		}
+		this.boidCount--;
+		if (boid instanceof AchieverBoid) {
+			this.achieverCount--;
+		}
+	}
+
+	/**
+	 * Applies the births and deaths since the last call, marking a tick boundary. The boids that stay keep their
+	 * relative order and the new ones are appended in the order they were added.
+	 */
+	public void applyPendingChanges() {
+		if (this.pendingRemovals) {
+			int kept = 0;
+			for (int i = 0; i < this.boids.size(); i++) {
+				Boid b = this.boids.get(i);
+				if (b.leavingPopulation) {
+					b.populationIndex = -1;
+					if (b.indexedBucket != null) {
+						b.indexedBucket.owner.remove(b);
+					}
+				} else {
+					b.populationIndex = kept;
+					this.boids.set(kept++, b);
+				}
+			}
+			truncate(this.boids, kept);
+
+			kept = 0;
+			for (int i = 0; i < this.achievers.size(); i++) {
+				AchieverBoid a = this.achievers.get(i);
+				if (!a.leavingPopulation) {
+					this.achievers.set(kept++, a);
+				}
+			}
+			truncate(this.achievers, kept);
+			this.pendingRemovals = false;
+		}
+
+		for (int i = 0; i < this.pendingAdditions.size(); i++) {
+			Boid b = this.pendingAdditions.get(i);
+			b.populationIndex = this.boids.size();
+			this.boids.add(b);
+			if (b instanceof AchieverBoid) {
+				this.achievers.add((AchieverBoid) b);
+				this.achieversByEdge.add((AchieverBoid) b);
+			} else if (b instanceof WollowskiBoid) {
+				this.wollowskiBoidsByEdge.add((WollowskiBoid) b);
+			}
+		}
+		this.pendingAdditions.clear();
+	}
+
+	/**
+	 * Lets the environment know a boid changed its position, to keep the edge index up to date.
+	 * 
+	 * @param boid
+	 *            the boid
+	 */
+	void boidMoved(Boid boid) {
+		if (boid.indexedBucket != null) {
+			boid.indexedBucket.owner.update(boid);
+		}
+	}
+
+	/**
+	 * Gets the achievers of {@link #getAllAchievers()} by the edge they are on.
+	 * 
+	 * @return the achievers by edge
+	 */
+	BoidsByEdge<AchieverBoid> getAchieversByEdge() {
+		return this.achieversByEdge;
 	}
 
 	/**
-	 * Gets the all achievers.
+	 * Gets the wollowski boids of {@link #getAllBoids()} by the edge they are on.
+	 * 
+	 * @return the wollowski boids by edge
+	 */
+	BoidsByEdge<WollowskiBoid> getWollowskiBoidsByEdge() {
+		return this.wollowskiBoidsByEdge;
+	}
+
+	/**
+	 * Drops the elements of a list from the given size on.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param size
+	 *            the new size
+	 */
+	private static void truncate(ArrayList<?> list, int size) {
+		if (size < list.size()) {
+			list.subList(size, list.size()).clear();
+		}
+	}
+
+	/**
+	 * Gets the all achievers, as they were at the last tick boundary. The list is a read-only view, not a copy.
 	 * 
 	 * @return the all achievers
 	 */
-	public Set<AchieverBoid> getAllAchievers() {
-		return this.achievers;
+	public List<AchieverBoid> getAllAchievers() {
+		return this.achieversView;
 	}
 
 	/**
-	 * Gets the all boids.
+	 * Gets the all boids, as they were at the last tick boundary. The list is a read-only view, not a copy, and it
+	 * doesn't change until {@link #applyPendingChanges()} is called.
 	 * 
 	 * @return the all boids
 	 */
-	public Set<Boid> getAllBoids() {
-		Set<Boid> allBoids = new HashSet<>();
-		allBoids.addAll(this.freeBoids);
-
-		allBoids.addAll(this.achievers);
-		return allBoids;
+	public List<Boid> getAllBoids() {
+		return this.boidsView;
 	}
 
 	/**
-	 * Count all boids.
+	 * Count all boids, including the ones that joined or died since the last tick boundary.
 	 * 
 	 * @return the int
 	 */
 	public int countAllBoids() {
-		return this.freeBoids.size() + this.achievers.size();
+		return this.boidCount;
+	}
+
+	/**
+	 * Count the achievers, including the ones that joined or died since the last tick boundary.
+	 * 
+	 * @return the int
+	 */
+	public int countAchievers() {
+		return this.achieverCount;
 	}
 
 	/**
@@ -114,28 +269,24 @@ public class Environment {
 	}
 
 	/**
-	 * Gets the most dense path.
+	 * Gets the most dense path, kept up to date as achievers register and unregister their paths. Among tours with the
+	 * same density, the one that got to it first wins.
 	 * 
-	 * @return the most dense path
+	 * @return the most dense path, read-only
 	 */
 	public SortableKeyValue<Tour, Double> getMostDensePath() {
-		ArrayList<SortableKeyValue<Tour, Double>> densities = new ArrayList<SortableKeyValue<Tour, Double>>();
-		for (Tour t : this.foundToursPopulations.keySet()) {
-			densities.add(new SortableKeyValue<Tour, Double>(t, this.foundToursPopulations.get(t)
-					/ (double) countAllBoids()));
-		}
-		
-		Collections.sort(densities);
-		if(densities.isEmpty()) {
+		TourRanking.Entry mostFollowed = this.tourRanking.getMostFollowed();
+		if (mostFollowed == null) {
 			return null;
 		}
-		return densities.get(densities.size() - 1);
+		return new SortableKeyValue<Tour, Double>(mostFollowed.tour, mostFollowed.population
+				/ (double) countAllBoids());
 	}
 
 	public List<SortableKeyValue<Tour, Integer>> getAllPaths() {
 		ArrayList<SortableKeyValue<Tour, Integer>> toursPopulation = new ArrayList<SortableKeyValue<Tour, Integer>>();
-		for (Tour t : this.foundToursPopulations.keySet()) {
-			toursPopulation.add(new SortableKeyValue<Tour, Integer>(t, this.foundToursPopulations.get(t)));
+		for (TourPopulation t : this.foundToursPopulations.values()) {
+			toursPopulation.add(new SortableKeyValue<Tour, Integer>(t.tour, t.population));
 		}
 		
 		Collections.sort(toursPopulation);
@@ -146,23 +297,103 @@ public class Environment {
 	 * Prints the distances map.
 	 */
 	public void printDistancesMap() {
-		for (Entry<Tour, Integer> entry : this.foundToursPopulations.entrySet()) {
-			System.out.println(entry.getKey().toString() + " boids: " + entry.getValue().toString());
+		for (TourPopulation t : this.foundToursPopulations.values()) {
+			System.out.println(t.tour.toString() + " boids: " + t.population);
 		}
 	}
 
 	/**
-	 * Register an achiever path.
+	 * Register an achiever path. The achiever must follow the shared instance returned, which is read-only.
 	 * 
+	 * @param key
+	 *            the key of the path
 	 * @param pathToFollow
-	 *            the path to follow
+	 *            the path to follow, copied only if no achiever follows it yet
+	 * @return the shared instance of the path, with its cost calculated
 	 */
-	public void registerPath(Tour pathToFollow) {
-		if (this.foundToursPopulations.containsKey(pathToFollow)) {
-			this.foundToursPopulations.put(pathToFollow, this.foundToursPopulations.get(pathToFollow) + 1);
+	public Tour registerPath(TourKey key, Tour pathToFollow) {
+		TourPopulation t = this.foundToursPopulations.get(key);
+		Tour shared = null;
+		if (t == null) {
+			shared = shareTour(pathToFollow);
+			t = new TourPopulation(shared);
+			this.foundToursPopulations.put(key, t);
 		} else {
-			this.foundToursPopulations.put(pathToFollow, 1);
+			// only the rotations and directions of the same tour, usually one or two
+			for (int i = 0; i < t.paths.size() && shared == null; i++) {
+				if (t.paths.get(i).equals(pathToFollow)) {
+					shared = t.paths.get(i);
+				}
+			}
+			if (shared == null) {
+				shared = shareTour(pathToFollow);
+				t.paths.add(shared);
+			}
 		}
+		this.tourRanking.increment(t);
+		return shared;
+	}
+
+	/**
+	 * Makes the instance of a path shared by the achievers following it.
+	 * 
+	 * @param path
+	 *            the path
+	 * @return a read-only copy of the path, with its cost calculated
+	 */
+	private Tour shareTour(Tour path) {
+		Tour shared = new Tour(path);
+		shared.calculateCost(this.graph);
+		shared.makeReadOnly();
+		return shared;
+	}
+
+	/**
+	 * Starts moving boids from several threads. Until {@link #endConcurrentMoves()}, the boids may not change the
+	 * population, the moves that would change it must be put off with {@link #deferMove(Boid)}.
+	 * 
+	 * @param proposingMoves
+	 *            whether the boids only propose their moves, to be committed later, instead of making them
+	 */
+	void startConcurrentMoves(boolean proposingMoves) {
+		this.deferredMoves = new ArrayList<>();
+		this.proposingMoves = proposingMoves;
+	}
+
+	/**
+	 * Tells if the boids moving now only propose their moves (see {@link Boid#commitProposedMove(boolean)}).
+	 * 
+	 * @return true, if moves are proposed instead of made
+	 */
+	boolean isProposingMoves() {
+		return this.proposingMoves;
+	}
+
+	/**
+	 * Puts off the move of a boid until boids move one by one again, if they are moving concurrently.
+	 * 
+	 * @param boid
+	 *            the boid
+	 * @return true, if the move was put off; false if the boid can go on moving now
+	 */
+	synchronized boolean deferMove(Boid boid) {
+		if (this.deferredMoves == null) {
+			return false;
+		}
+		this.deferredMoves.add(boid);
+		return true;
+	}
+
+	/**
+	 * Ends moving boids from several threads.
+	 * 
+	 * @return the boids whose move was put off, in no particular order
+	 */
+	synchronized List<Boid> endConcurrentMoves() {
+		List<Boid> deferred = this.deferredMoves;
+		this.deferredMoves = null;
+		this.proposingMoves = false;
+		return deferred;
 	}
 
 	/**
@@ -181,16 +412,37 @@ public class Environment {
 	/**
 	 * Unregister achiever path.
 	 * 
-	 * @param pathToFollow
-	 *            the path to follow
-	 */
-	public void unregisterPath(Tour pathToFollow) {
-		if (this.foundToursPopulations.containsKey(pathToFollow)) {
-			if (this.foundToursPopulations.get(pathToFollow) == 1) {
-				this.foundToursPopulations.remove(pathToFollow);
-			} else {
-				this.foundToursPopulations.put(pathToFollow, this.foundToursPopulations.get(pathToFollow) - 1);
-			}
+	 * @param key
+	 *            the key of the path
+	 */
+	public void unregisterPath(TourKey key) {
+		TourPopulation t = this.foundToursPopulations.get(key);
+		if (t == null) {
+			return;
+		}
+		this.tourRanking.decrement(t);
+		if (t.population == 0) {
+			this.foundToursPopulations.remove(key);
+		}
+	}
+
+	/**
+	 * A found tour and the number of achievers following it.
+	 */
+	private static final class TourPopulation extends TourRanking.Entry {
+
+		/** The paths followed for the tour (it may be started elsewhere or walked backwards), shared by achievers. */
+		final ArrayList<Tour> paths = new ArrayList<>(1);
+
+		/**
+		 * Instantiates a new tour population, with nobody following the tour yet.
+		 * 
+		 * @param tour
+		 *            the tour, the first path registered for it
+		 */
+		TourPopulation(Tour tour) {
+			super(tour);
+			this.paths.add(tour);
 		}
 	}
 }
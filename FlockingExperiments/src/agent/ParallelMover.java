@@ -0,0 +1,209 @@
+package agent;
+
+import graph.FlockingGraph;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Moves every boid of an environment once, using several threads. The boids that {@link Boid#movesIndependently()}
+ * move first, with the population split in ranges among the threads. The rest of the boids (the ones that look at
+ * others while moving, and the ones whose move would change the population, see {@link Environment#deferMove(Boid)})
+ * move after, one by one in the population order.
+ *
+ * A deterministic mover runs the tick in two phases. First the boids propose their moves in parallel, looking at the
+ * occupancy of the graph as it was at the start of the tick, which doesn't change meanwhile. Then the moves are
+ * committed one by one in the population order: each takes its space if there is any left, and only then the boids
+ * leave their segments, so a boid never moves into the space another one leaves in the same tick. Boids earlier in
+ * the population win the conflicts, so as long as each boid draws from a random stream of its own (see
+ * {@link util.SplitMix64Random}), the result only depends on the seed, not on the threads.
+ *
+ * A mover with relaxed determinism makes the moves right away instead. The segments are locked edge by edge
+ * meanwhile (see {@link FlockingGraph#setConcurrentMoves(boolean)}) and a boid takes its space in a segment before
+ * leaving the one it is in, so segments never go over their capacity either. But when boids compete for a space, the
+ * first thread to get there wins, so two runs from the same seed may differ.
+ */
+public class ParallelMover {
+
+	/** The number of tasks the population is split into for each thread, so idle threads can help busy ones. */
+	private static final int TASKS_PER_THREAD = 8;
+
+	/** The smallest number of boids worth a task. */
+	private static final int MIN_TASK_SIZE = 1024;
+
+	/** Orders boids by their position in the population. */
+	private static final Comparator<Boid> BY_POPULATION_INDEX = new Comparator<Boid>() {
+		@Override
+		public int compare(Boid a, Boid b) {
+			return Integer.compare(a.populationIndex, b.populationIndex);
+		}
+	};
+
+	/** The pool running the tasks. */
+	private final ForkJoinPool pool;
+
+	/** The number of threads. */
+	private final int parallelism;
+
+	/** Whether ticks run in two phases, proposing the moves and then committing them. */
+	private final boolean deterministic;
+
+	/** Whether each boid of the population got the space for its proposed move, reused between ticks. */
+	private boolean[] claimed = new boolean[0];
+
+	/**
+	 * Instantiates a new parallel mover.
+	 *
+	 * @param parallelism
+	 *            the number of threads
+	 * @param deterministic
+	 *            whether the result must not depend on the threads
+	 */
+	public ParallelMover(int parallelism, boolean deterministic) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.parallelism = parallelism;
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * Moves every boid of the environment once, like a tick of the problem.
+	 *
+	 * @param environment
+	 *            the environment
+	 */
+	public void moveAll(Environment environment) {
+		FlockingGraph graph = environment.getFlockingGraph();
+		List<Boid> population = environment.getAllBoids();
+		int size = population.size();
+		int taskSize = Math.max(MIN_TASK_SIZE, size / (this.parallelism * TASKS_PER_THREAD) + 1);
+
+		List<Boid> deferred;
+		if (this.deterministic) {
+			graph.setConcurrentReads(true);
+			environment.startConcurrentMoves(true);
+		} else {
+			graph.setConcurrentMoves(true);
+			environment.startConcurrentMoves(false);
+		}
+		try {
+			this.pool.invoke(new MoveRange(population, 0, size, taskSize));
+		} finally {
+			graph.setConcurrentMoves(false);
+			deferred = environment.endConcurrentMoves();
+		}
+
+		if (this.deterministic) {
+			commitProposedMoves(population);
+		}
+
+		// now the others, one by one
+		Collections.sort(deferred, BY_POPULATION_INDEX);
+		int nextDeferred = 0;
+		for (int i = 0; i < size; i++) {
+			Boid b = population.get(i);
+			boolean wasDeferred = nextDeferred < deferred.size() && deferred.get(nextDeferred) == b;
+			if (wasDeferred) {
+				nextDeferred++;
+			}
+			if (wasDeferred || !b.movesIndependently()) {
+				b.tryToMove(b.getSpeed());
+			}
+		}
+	}
+
+	/**
+	 * Commits the moves proposed by the boids, first taking the space for each of them in the population order, then
+	 * leaving the segments they were in.
+	 *
+	 * @param population
+	 *            the population
+	 */
+	private void commitProposedMoves(List<Boid> population) {
+		int size = population.size();
+		if (this.claimed.length < size) {
+			this.claimed = new boolean[size];
+		}
+		for (int i = 0; i < size; i++) {
+			Boid b = population.get(i);
+			if (b.proposedEdge != null) {
+				this.claimed[i] = b.claimProposedSegment();
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			Boid b = population.get(i);
+			if (b.proposedEdge != null) {
+				b.commitProposedMove(this.claimed[i]);
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads of this mover.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Task moving the boids of a range of the population that can move concurrently.
+	 */
+	private static final class MoveRange extends RecursiveAction {
+
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The population. */
+		private final List<Boid> population;
+
+		/** The first boid of the range. */
+		private final int from;
+
+		/** The boid after the last one of the range. */
+		private final int to;
+
+		/** The largest range moved without splitting it. */
+		private final int taskSize;
+
+		/**
+		 * Instantiates a new task.
+		 *
+		 * @param population
+		 *            the population
+		 * @param from
+		 *            the first boid of the range
+		 * @param to
+		 *            the boid after the last one of the range
+		 * @param taskSize
+		 *            the largest range moved without splitting it
+		 */
+		MoveRange(List<Boid> population, int from, int to, int taskSize) {
+			this.population = population;
+			this.from = from;
+			this.to = to;
+			this.taskSize = taskSize;
+		}
+
+		/**
+		 * Moves the boids of the range, splitting it in two tasks while it is too large.
+		 */
+		@Override
+		protected void compute() {
+			if (this.to - this.from > this.taskSize) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new MoveRange(this.population, this.from, middle, this.taskSize), new MoveRange(
+						this.population, middle, this.to, this.taskSize));
+				return;
+			}
+
+			for (int i = this.from; i < this.to; i++) {
+				Boid b = this.population.get(i);
+				if (b.movesIndependently()) {
+					b.tryToMove(b.getSpeed());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package agent;
+
+import graph.Tour;
+
+import java.util.Arrays;
+
+/**
+ * Ranks the tours found by the number of achievers following them, so the most followed one is known in constant time
+ * however many tours there are. The tours are kept in buckets by population, each a list linked in the order the tours
+ * got to that population, so among tours with the same population the one that got to it first wins. Populations
+ * change one by one, so the bucket below the top one is never empty when the top one empties.
+ */
+final class TourRanking {
+
+	/** The initial number of population buckets. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The first of the tours followed by each number of achievers. Index 0 is unused, tours nobody follows are out of
+	 * the ranking.
+	 */
+	private Entry[] firstByPopulation;
+
+	/** The last of the tours followed by each number of achievers. */
+	private Entry[] lastByPopulation;
+
+	/** The population of the most followed tour, 0 if there is none. */
+	private int maxPopulation;
+
+	/**
+	 * Instantiates a new empty ranking.
+	 */
+	TourRanking() {
+		this.firstByPopulation = new Entry[INITIAL_CAPACITY];
+		this.lastByPopulation = new Entry[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Counts one more achiever following a tour.
+	 *
+	 * @param entry
+	 *            the entry of the tour
+	 */
+	void increment(Entry entry) {
+		if (entry.population > 0) {
+			unlink(entry);
+		}
+		entry.population++;
+		link(entry);
+		if (entry.population > this.maxPopulation) {
+			this.maxPopulation = entry.population;
+		}
+	}
+
+	/**
+	 * Counts one less achiever following a tour. The tour leaves the ranking when nobody follows it anymore.
+	 *
+	 * @param entry
+	 *            the entry of the tour, followed by at least one achiever
+	 */
+	void decrement(Entry entry) {
+		unlink(entry);
+		entry.population--;
+		if (entry.population > 0) {
+			link(entry);
+		}
+		if (this.firstByPopulation[this.maxPopulation] == null) {
+			this.maxPopulation--;
+		}
+	}
+
+	/**
+	 * Gets the most followed tour.
+	 *
+	 * @return the entry of the tour, or null if no tour is followed
+	 */
+	Entry getMostFollowed() {
+		return this.maxPopulation == 0 ? null : this.firstByPopulation[this.maxPopulation];
+	}
+
+	/**
+	 * Adds a tour at the end of the list of the tours with its population.
+	 *
+	 * @param entry
+	 *            the entry of the tour
+	 */
+	private void link(Entry entry) {
+		int population = entry.population;
+		if (population >= this.firstByPopulation.length) {
+			this.firstByPopulation = Arrays.copyOf(this.firstByPopulation, population * 2);
+			this.lastByPopulation = Arrays.copyOf(this.lastByPopulation, population * 2);
+		}
+		Entry last = this.lastByPopulation[population];
+		entry.previous = last;
+		entry.next = null;
+		if (last == null) {
+			this.firstByPopulation[population] = entry;
+		} else {
+			last.next = entry;
+		}
+		this.lastByPopulation[population] = entry;
+	}
+
+	/**
+	 * Removes a tour from the list of the tours with its population.
+	 *
+	 * @param entry
+	 *            the entry of the tour
+	 */
+	private void unlink(Entry entry) {
+		int population = entry.population;
+		if (entry.previous == null) {
+			this.firstByPopulation[population] = entry.next;
+		} else {
+			entry.previous.next = entry.next;
+		}
+		if (entry.next == null) {
+			this.lastByPopulation[population] = entry.previous;
+		} else {
+			entry.next.previous = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	/**
+	 * A tour found and the number of achievers following it.
+	 */
+	static class Entry {
+
+		/** The tour. */
+		final Tour tour;
+
+		/** The number of achievers following the tour. */
+		int population;
+
+		/** The previous tour with the same population. */
+		Entry previous;
+
+		/** The next tour with the same population. */
+		Entry next;
+
+		/**
+		 * Instantiates a new entry, with nobody following the tour yet.
+		 *
+		 * @param tour
+		 *            the tour
+		 */
+		Entry(Tour tour) {
+			this.tour = tour;
+		}
+	}
+}
@@ -6,12 +6,11 @@ import graph.FlockingGraph;
 import graph.Position;
 import graph.Tour;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 /**
  * The Class WollowskiBoid for simple flocking modeling.
@@ -27,6 +26,9 @@ public class WollowskiBoid extends Boid {
 	/** Weight for the number of choices X. */
 	double numberOfChoicesWeight;
 
+	/** The boids in sight in this tick, found once when starting to move and reused until the next move. */
+	private final List<WollowskiBoid> boidsInSight = new ArrayList<>();
+
 	/**
 	 * Instantiates a new wollowski boid out of another boid.
 	 * 
@@ -79,12 +81,12 @@ public class WollowskiBoid extends Boid {
 	public void tryToMove(double distance) {
 
 		// 1) Check for other boids around
-		Set<Boid> boidsInSight = getBoidsInSight();
+		List<WollowskiBoid> boidsInSight = findBoidsInSight();
 
 		// 2) Compare and update the cities reached by the chain
-		for (Boid boid : boidsInSight) {
-			if (boid.pos.isStrictlySameEdge(this.pos)) {
-				WollowskiBoid b = (WollowskiBoid) boid;
+		for (int i = 0; i < boidsInSight.size(); i++) {
+			WollowskiBoid b = boidsInSight.get(i);
+			if (b.pos.isStrictlySameEdge(this.pos)) {
 				if (!b.citiesChecked.equals(this.citiesChecked) && b.citiesChecked.contains(this.pos.getTo())) {
 					this.citiesChecked.clear();
 					this.citiesChecked.addAll(b.citiesChecked);
@@ -140,6 +142,17 @@ public class WollowskiBoid extends Boid {
 		}
 	}
 
+	/**
+	 * Tells if this boid can move concurrently with others. It can't, wollowski boids look at the chain around them
+	 * first.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean movesIndependently() {
+		return false;
+	}
+
 	/**
 	 * Decide where to go next, what edge to take.
 	 */
@@ -166,7 +179,7 @@ public class WollowskiBoid extends Boid {
 			// since I'm going to achieve my goal, its time to stop at the end of the edge. So I'm not gonna cross
 			// anything.
 			if (added) {
-				this.pathTaken.locations.remove(this.pathTaken.locations.size() - 1);
+				this.pathTaken.removeLast();
 				added = false;
 			}
 
@@ -200,44 +213,59 @@ public class WollowskiBoid extends Boid {
 	 * @return the partial choice probability
 	 */
 	@Override
-	protected Double getPartialChoiceProbability(Edge edge, List<Edge> possibleEdges) {
+	protected double getPartialChoiceProbability(Edge edge, List<Edge> possibleEdges) {
 		// count the boids visible in the next edge to use in the formula score
-		Set<Boid> visibleBoidsInEdge = new HashSet<>();
-		visibleBoidsInEdge.addAll(getBoidsInSight());
-
-		Iterator<Boid> it = visibleBoidsInEdge.iterator();
-		while (it.hasNext()) {
-			Boid b = it.next();
-			if (!b.pos.edge.isStrictlySameEdge(edge)) {
-				it.remove();
+		int visibleBoidsInThisChoice = 0;
+		for (int i = 0; i < this.boidsInSight.size(); i++) {
+			if (this.boidsInSight.get(i).pos.edge.isStrictlySameEdge(edge)) {
+				visibleBoidsInThisChoice++;
 			}
 		}
 
 		int totalEdgeChoices = possibleEdges.size();
-		int visibleBoidsInThisChoice = visibleBoidsInEdge.size();
 
 		// TODO: maybe this should consider distances to don't be so dumb
-		Double probability = Math.pow(visibleBoidsInThisChoice, this.visibleBoidsInPathWeight)
+		double probability = Math.pow(visibleBoidsInThisChoice, this.visibleBoidsInPathWeight)
 				+ Math.pow(1d / totalEdgeChoices, this.numberOfChoicesWeight);
 
 		return probability;
 	}
 
 	/**
-	 * Gets the boids in sight.
+	 * Finds the boids in sight, looking them up by edge. Ahead on the current edge, they are the boids this boid
+	 * {@link #canSee(Boid)}. If the vision reaches the end node, they also include the boids within reach on every
+	 * edge leaving it, not only on the possible next edges, since those change once the end node is in the path taken.
+	 * Whoever looks at the boids on a next edge only asks for the possible ones.
 	 * 
-	 * @return the boids in sight
+	 * @return the boids in sight, in a list kept until the next call
 	 */
-	private Set<Boid> getBoidsInSight() {
-		Set<Boid> boidsInSight = new HashSet<>();
+	private List<WollowskiBoid> findBoidsInSight() {
+		List<WollowskiBoid> boidsInSight = this.boidsInSight;
+		boidsInSight.clear();
+
+		BoidsByEdge<WollowskiBoid> boids = this.environment.getWollowskiBoidsByEdge();
+		int from = this.pos.getFrom();
+		int to = this.pos.getTo();
+		double distance = this.pos.getDistanceFromStart();
+		double distanceToEnd = this.pos.getDistanceToEdgeEnd();
 
-		for (Boid b : this.environment.getAllBoids()) {
-			if (canSee(b)) {
-				boidsInSight.add(b);
+		if (distanceToEnd >= this.visionRange) {
+			// Vision is completely inside the edge
+			boids.collect(from, to, distance, this.visionRange, this, boidsInSight);
+		} else {
+			// Vision exceeds edge
+			boids.collect(from, to, distance, Double.POSITIVE_INFINITY, this, boidsInSight);
+			int size = boidsInSight.size();
+			boids.collectLeaving(to, this.visionRange - distanceToEnd, this, boidsInSight);
+			if (from == to) {
+				// a loop also leaves the end node, but only the boids ahead on it are in sight
+				for (int i = boidsInSight.size() - 1; i >= size; i--) {
+					if (boidsInSight.get(i).pos.isStrictlySameEdge(this.pos)) {
+						boidsInSight.remove(i);
+					}
+				}
 			}
 		}
-
-		boidsInSight.remove(this);
 		return boidsInSight;
 	}
 
@@ -248,26 +276,17 @@ public class WollowskiBoid extends Boid {
 	 *            the possible edges
 	 */
 	private void updateCheckedCities(List<Edge> possibleEdges) {
-		Set<Boid> visibleBoids = getBoidsInSight();
+		List<WollowskiBoid> visibleBoids = this.boidsInSight;
 		for (Edge e : possibleEdges) {
 			// for each possible next edge
 			if (getGraph().isEdgeFull(e)) {
 				// if is a full edge
-				Set<Boid> visibleBoidsInEdge = new HashSet<>();
-				visibleBoidsInEdge.addAll(visibleBoids);
-
-				Iterator<Boid> it = visibleBoidsInEdge.iterator();
-				while (it.hasNext()) {
-					Boid b = it.next();
+				for (int j = 0; j < visibleBoids.size(); j++) {
+					WollowskiBoid b = visibleBoids.get(j);
 					if (!b.pos.edge.isStrictlySameEdge(e)) {
-						it.remove();
+						// only the visible boids in this edge
+						continue;
 					}
-				}
-				// get the visible boids in this edge
-
-				for (Boid boid : visibleBoidsInEdge) {
-					// for each visible boid in this edge
-					WollowskiBoid b = (WollowskiBoid) boid;
 					// if the boid has a checked city that I dont have
 					Iterator<Integer> i = b.citiesChecked.descendingIterator();
 					Tour t = new Tour(this.pathTaken);
@@ -2,7 +2,10 @@ package controller;
 
 import graph.TraditionalGraph;
 
+import java.util.ArrayList;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.TreeMap;
 
 /**
  * The Class GenerateSparseInstance.
@@ -42,36 +45,109 @@ public class GenerateSparseInstance {
 	 */
 	public static TraditionalGraph GenerateSparseGraph(int numberOfCities) {
 		TraditionalGraph world = new TraditionalGraph(numberOfCities);
+		ArrayList<TreeMap<Integer, Integer>> neighbors = generateLinks(numberOfCities);
+		for (int i = 0; i < numberOfCities; i++) {
+			for (Entry<Integer, Integer> e : neighbors.get(i).tailMap(i).entrySet()) {
+				world.setEdgeLength(i, e.getKey(), e.getValue());
+			}
+		}
+		return world;
+	}
+
+	/**
+	 * Generate sparse graph, optionally compressed. The compressed graph has the same edges as the one from
+	 * {@link #GenerateSparseGraph(int)}, but never allocates a distance matrix, so it can be used for large instances.
+	 * 
+	 * @param numberOfCities
+	 *            the number of cities
+	 * @param compressed
+	 *            whether to generate a compressed graph
+	 * @return the traditional graph
+	 */
+	public static TraditionalGraph GenerateSparseGraph(int numberOfCities, boolean compressed) {
+		if (!compressed) {
+			return GenerateSparseGraph(numberOfCities);
+		}
+
+		// each link is stored in both maps, but only needs to be given once
+		ArrayList<TreeMap<Integer, Integer>> neighbors = generateLinks(numberOfCities);
+		int numberOfLinks = 0;
+		for (int i = 0; i < numberOfCities; i++) {
+			numberOfLinks += neighbors.get(i).tailMap(i).size();
+		}
+		int[] linksFrom = new int[numberOfLinks];
+		int[] linksTo = new int[numberOfLinks];
+		int[] linkLengths = new int[numberOfLinks];
+		int link = 0;
+		for (int i = 0; i < numberOfCities; i++) {
+			for (Entry<Integer, Integer> e : neighbors.get(i).tailMap(i).entrySet()) {
+				linksFrom[link] = i;
+				linksTo[link] = e.getKey();
+				linkLengths[link] = e.getValue();
+				link++;
+			}
+		}
+
+		return new TraditionalGraph(numberOfCities, linksFrom, linksTo, linkLengths, numberOfLinks);
+	}
+
+	/**
+	 * Generates the links of a sparse graph, with the Erdos-Renyi model of random graphs. Every city gets at least two
+	 * neighbors.
+	 * 
+	 * @param numberOfCities
+	 *            the number of cities
+	 * @return the neighbors of each city, with the length of the link to each
+	 */
+	private static ArrayList<TreeMap<Integer, Integer>> generateLinks(int numberOfCities) {
+		ArrayList<TreeMap<Integer, Integer>> neighbors = new ArrayList<TreeMap<Integer, Integer>>();
+		for (int i = 0; i < numberOfCities; i++) {
+			neighbors.add(new TreeMap<Integer, Integer>());
+		}
 
 		Random r = new Random(0);
 		int distance;
 		int dice;
 
-		// To generate large, sparse random graphs we use the Erdos-Renyi model of random graphs.
-
 		for (int i = 0; i < numberOfCities; i++) {
 			for (int j = i + 1; j < numberOfCities; j++) {
 				distance = r.nextInt(100) + 1;
 				dice = r.nextInt(numberOfCities);
 				if (dice <= (numberOfCities / 10)) {
-					world.setEdgeLength(i, j, distance);
+					link(neighbors, i, j, distance);
 				}
 
 			}
-			if (world.getArrayOfNeighborsOf(i).length == 0) {
+			if (neighbors.get(i).size() == 0) {
 				distance = r.nextInt(100) + 1;
 				dice = r.nextInt(numberOfCities);
-				world.setEdgeLength(i, dice, distance);
+				link(neighbors, i, dice, distance);
 			}
-			while (world.getArrayOfNeighborsOf(i).length == 1) {
+			while (neighbors.get(i).size() == 1) {
 				dice = r.nextInt(numberOfCities);
-				if (dice != world.getArrayOfNeighborsOf(i)[0]) {
+				if (dice != neighbors.get(i).firstKey()) {
 					distance = r.nextInt(100) + 1;
-					world.setEdgeLength(i, dice, distance);
+					link(neighbors, i, dice, distance);
 				}
 			}
 		}
+		return neighbors;
+	}
 
-		return world;
+	/**
+	 * Links two cities both ways.
+	 * 
+	 * @param neighbors
+	 *            the neighbors of each city
+	 * @param cityA
+	 *            the city a
+	 * @param cityB
+	 *            the city b
+	 * @param distance
+	 *            the distance
+	 */
+	private static void link(ArrayList<TreeMap<Integer, Integer>> neighbors, int cityA, int cityB, int distance) {
+		neighbors.get(cityA).put(cityB, distance);
+		neighbors.get(cityB).put(cityA, distance);
 	}
 }
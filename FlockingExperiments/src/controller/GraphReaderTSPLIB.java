@@ -1,6 +1,7 @@
 package controller;
 
 import graph.EuclideanGraph;
+import graph.EuclideanGraphCache;
 import graph.TraditionalGraph;
 
 import java.io.BufferedReader;
@@ -73,5 +74,58 @@ public class GraphReaderTSPLIB {
 		EuclideanGraph graph = EuclideanGraph.loadGraph(graphFile);
 		return graph;
 	}
+
+	/**
+	 * Generate a compressed graph from file, linking each city only to its nearest cities.
+	 * 
+	 * @param filepath
+	 *            path to the file containing graph data
+	 * @param nearestNeighbors
+	 *            how many of the nearest cities to link each city to
+	 * @return the euclidean graph
+	 * @throws IOException
+	 * 				if there are any issues while reading the file
+	 */
+	public static EuclideanGraph generateGraphFromFile(String filepath, int nearestNeighbors) throws IOException {
+		File graphFile = new File(filepath);
+		EuclideanGraph graph = EuclideanGraph.loadGraph(graphFile, nearestNeighbors);
+		return graph;
+	}
+
+	/**
+	 * Generate a graph from file through its binary cache.
+	 * 
+	 * The cache is written next to the file on first load and memory-mapped afterwards. The graph reads its distances
+	 * straight from the mapped file, keeping no distance matrix of its own.
+	 * 
+	 * @param filepath
+	 *            path to the file containing graph data
+	 * @return the euclidean graph
+	 * @throws IOException
+	 * 				if there are any issues while reading the file
+	 */
+	public static EuclideanGraph generateCachedGraphFromFile(String filepath) throws IOException {
+		File graphFile = new File(filepath);
+		EuclideanGraph graph = EuclideanGraphCache.loadGraph(graphFile);
+		return graph;
+	}
+
+	/**
+	 * Generate a graph from file that computes its distances when needed instead of keeping a distance matrix.
+	 * 
+	 * @param filepath
+	 *            path to the file containing graph data
+	 * @param rowCacheSize
+	 *            how many rows of distances to keep cached, 0 to always compute them
+	 * @return the euclidean graph
+	 * @throws IOException
+	 * 				if there are any issues while reading the file
+	 */
+	public static EuclideanGraph generateGraphWithComputedDistancesFromFile(String filepath, int rowCacheSize)
+			throws IOException {
+		File graphFile = new File(filepath);
+		EuclideanGraph graph = EuclideanGraph.loadGraphWithComputedDistances(graphFile, rowCacheSize);
+		return graph;
+	}
 	
 }
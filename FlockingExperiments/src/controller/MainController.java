@@ -405,7 +405,7 @@ public class MainController {
 
 		EuclideanGraph eucGraph;
 		try {
-			eucGraph = GraphReaderTSPLIB.generateGraphFromFile(pathToGraph);
+			eucGraph = GraphReaderTSPLIB.generateCachedGraphFromFile(pathToGraph);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -500,7 +500,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, wD, weightOfOccupancy,
 						boidVisionRange, boidSpeed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -548,7 +548,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, weightOfDistance, wO,
 						boidVisionRange, boidSpeed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -586,7 +586,7 @@ public class MainController {
 
 		EuclideanGraph eucGraph;
 		try {
-			eucGraph = GraphReaderTSPLIB.generateGraphFromFile(pathToGraph);
+			eucGraph = GraphReaderTSPLIB.generateCachedGraphFromFile(pathToGraph);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -613,7 +613,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, weightOfDistance,
 						weightOfOccupancy, boidVisionRange, speed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 					TestsLogger.logMessage("Tour found: " + solution.toString());
 				} else {
 					divider--;
@@ -661,7 +661,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, weightOfDistance,
 						weightOfOccupancy, visionMultiplier * boidSpeed, boidSpeed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -711,7 +711,7 @@ public class MainController {
 						densityThreshold, weightOfDistance, weightOfOccupancy, boidVisionRange, boidSpeed, goal,
 						displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -759,7 +759,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, weightOfDistance,
 						weightOfOccupancy, boidVisionRange, boidSpeed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -806,7 +806,7 @@ public class MainController {
 				Tour solution = problem.solve(multiplierBoidSpawn, maxAgents, densityThreshold, weightOfDistance,
 						weightOfOccupancy, boidVisionRange, boidSpeed, goal, displaySteps);
 				if (solution != null) {
-					average += solution.lastCalculatedCost;
+					average += solution.getLastCalculatedCost();
 				} else {
 					divider--;
 				}
@@ -0,0 +1,100 @@
+package controller;
+
+import graph.FlockingGraph;
+import graph.Tour;
+import graph.TourKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import util.SortableKeyValue;
+
+import agent.Environment;
+
+/**
+ * Check of the most dense path kept by the {@link Environment} as achievers register and unregister their paths.
+ * Random registrations and unregistrations are made on a few tours, some much more often than others so populations
+ * tie and overtake each other, and after each one the most dense path is checked against a recount of the
+ * populations from scratch. Among tours with the same population, the one that got to it first must win.
+ */
+public class MostDensePathCheck {
+
+	/** The number of registrations and unregistrations made. */
+	private static final int OPERATIONS = 200000;
+
+	/** The number of tours. */
+	private static final int TOURS = 50;
+
+	/** The number of tours picked much more often than the others. */
+	private static final int POPULAR_TOURS = 5;
+
+	/** The chance, in percent, that an operation is a registration. */
+	private static final int REGISTER_PERCENT = 52;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments, optionally the seed
+	 */
+	public static void main(String args[]) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+		Random r = new Random(seed);
+
+		Environment environment = new Environment(new FlockingGraph(TOURS + 1, 1, 3));
+		List<Tour> tours = new ArrayList<Tour>();
+		List<TourKey> keys = new ArrayList<TourKey>();
+		for (int i = 0; i < TOURS; i++) {
+			Tour tour = new Tour();
+			tour.offer(i);
+			tour.offer(i + 1);
+			tours.add(tour);
+			keys.add(TourKey.of(tour));
+		}
+
+		// the population of each tour, and when it got to it
+		int[] populations = new int[TOURS];
+		int[] reachedAt = new int[TOURS];
+		for (int operation = 0; operation < OPERATIONS; operation++) {
+			int tour = r.nextInt(r.nextBoolean() ? POPULAR_TOURS : TOURS);
+			if (r.nextInt(100) < REGISTER_PERCENT) {
+				environment.registerPath(keys.get(tour), tours.get(tour));
+				populations[tour]++;
+				reachedAt[tour] = operation;
+			} else if (populations[tour] > 0) {
+				environment.unregisterPath(keys.get(tour));
+				populations[tour]--;
+				reachedAt[tour] = operation;
+			}
+
+			int expected = -1;
+			int followed = 0;
+			for (int i = 0; i < TOURS; i++) {
+				if (populations[i] == 0) {
+					continue;
+				}
+				followed++;
+				if (expected < 0 || populations[i] > populations[expected]
+						|| (populations[i] == populations[expected] && reachedAt[i] < reachedAt[expected])) {
+					expected = i;
+				}
+			}
+
+			SortableKeyValue<Tour, Double> mostDense = environment.getMostDensePath();
+			if (expected < 0 ? mostDense != null : (mostDense == null || !TourKey.of(mostDense.keyObject).equals(
+					keys.get(expected)))) {
+				System.out.println("FAILED at operation " + operation + ": expected "
+						+ (expected < 0 ? "none" : keys.get(expected)) + ", got "
+						+ (mostDense == null ? "none" : TourKey.of(mostDense.keyObject)));
+				return;
+			}
+			if (environment.getAllPaths().size() != followed) {
+				System.out.println("FAILED at operation " + operation + ": expected " + followed
+						+ " tours followed, got " + environment.getAllPaths().size());
+				return;
+			}
+		}
+		System.out.println("OK: " + OPERATIONS + " operations, the most dense path always matched the recount.");
+	}
+}
@@ -0,0 +1,200 @@
+package controller;
+
+import goal.GoalEvaluator;
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Position;
+import graph.Tour;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import agent.Boid;
+import agent.Environment;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Harness that counts the heap allocated while boids move. A population of explorers moves for a number of ticks
+ * after a warm-up, and the bytes allocated by the moving thread are read before and after the measured ticks. A
+ * steady-state tick, including the ticks where boids decide and cross to another edge, should allocate nothing.
+ */
+public class MovementAllocationHarness {
+
+	/** The graph used when none is given. */
+	private static final String DEFAULT_GRAPH = "testdata/eil51.tsp";
+
+	/** The ticks run before measuring, to let the JIT compile the movement path and the paths reach full size. */
+	private static final int WARM_UP_TICKS = 2000;
+
+	/** The ticks measured. */
+	private static final int MEASURED_TICKS = 1000;
+
+	/** The boid speed. */
+	private static final double SPEED = 2d;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments, optionally the TSPLIB file to use
+	 * @throws IOException
+	 *             if there are any issues while reading the graph
+	 */
+	public static void main(String args[]) throws IOException {
+		String pathToGraph = args.length > 0 ? args[0] : DEFAULT_GRAPH;
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM cannot count allocated memory per thread.");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		FlockingGraph graph = new FlockingGraph(GraphReaderTSPLIB.generateCachedGraphFromFile(pathToGraph),
+				FlockingGraph.DEFAULT_SEGMENT_LENGTH, FlockingGraph.DEFAULT_SEGMENT_CAPACITY);
+		graph.resetSegments();
+		Environment environment = new Environment(graph);
+
+		int numberOfNodes = graph.getNumberOfNodes();
+		RestartingBoid[] boids = spawnBoids(graph, environment, 3 * numberOfNodes * numberOfNodes, new Random(0));
+
+		for (int t = 0; t < WARM_UP_TICKS; t++) {
+			tick(boids);
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		// what reading the counter allocates by itself
+		long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+		before = threads.getThreadAllocatedBytes(threadId);
+		int decisionsBefore = countDecisions(boids);
+		for (int t = 0; t < MEASURED_TICKS; t++) {
+			tick(boids);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+		int decisions = countDecisions(boids) - decisionsBefore;
+
+		System.out.println("Boids: " + boids.length);
+		System.out.println("Ticks: " + MEASURED_TICKS + ", edge decisions: " + decisions);
+		System.out.println("Allocated: " + allocated + " bytes (" + allocated / (double) MEASURED_TICKS
+				+ " bytes per tick)");
+		if (allocated > 0) {
+			System.out.println("FAILED: the movement path allocates.");
+			System.exit(1);
+		}
+		System.out.println("OK: no allocation.");
+	}
+
+	/**
+	 * Moves every boid once.
+	 *
+	 * @param boids
+	 *            the boids
+	 */
+	private static void tick(Boid[] boids) {
+		for (int i = 0; i < boids.length; i++) {
+			boids[i].tryToMove(boids[i].getSpeed());
+		}
+	}
+
+	/**
+	 * Counts the decisions taken so far.
+	 *
+	 * @param boids
+	 *            the boids
+	 * @return the decision count
+	 */
+	private static int countDecisions(RestartingBoid[] boids) {
+		int decisions = 0;
+		for (RestartingBoid b : boids) {
+			decisions += b.decisions;
+		}
+		return decisions;
+	}
+
+	/**
+	 * Spawns boids at random free places of the graph.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param environment
+	 *            the environment
+	 * @param count
+	 *            how many boids to try to spawn
+	 * @param r
+	 *            the random instance
+	 * @return the boids spawned
+	 */
+	private static RestartingBoid[] spawnBoids(FlockingGraph graph, Environment environment, int count, Random r) {
+		GoalEvaluator neverReached = new GoalEvaluator() {
+
+			@Override
+			public boolean isGoal(FlockingGraph g, Tour pathTaken) {
+				return false;
+			}
+		};
+
+		RestartingBoid[] boids = new RestartingBoid[count];
+		int spawned = 0;
+		for (int attempt = 0; attempt < count * 2 && spawned < count; attempt++) {
+			int from = r.nextInt(graph.getNumberOfNodes());
+			int[] candidates = graph.getCandidateList(from);
+			if (candidates.length == 0) {
+				continue;
+			}
+			Edge edge = graph.getEdge(from, candidates[r.nextInt(candidates.length)]);
+			double distance = r.nextDouble() * (edge.getLength() - FlockingGraph.MINIMUM_DISTANCE_MARGIN);
+			if (!graph.isSegmentFull(edge, graph.getSegmentIndexForDistance(edge, distance))) {
+				double speed = SPEED * (0.8 + r.nextDouble() * 0.4);
+				boids[spawned++] = new RestartingBoid(new Position(edge, distance), speed, environment, neverReached, r);
+			}
+		}
+		RestartingBoid[] result = new RestartingBoid[spawned];
+		System.arraycopy(boids, 0, result, 0, spawned);
+		return result;
+	}
+
+	/**
+	 * Explorer that starts a new path instead of reaching a goal, so the population and the size of the paths stay
+	 * the same while measuring.
+	 */
+	private static class RestartingBoid extends Boid {
+
+		/** The decisions taken so far. */
+		int decisions;
+
+		/**
+		 * Instantiates a new restarting boid.
+		 *
+		 * @param position
+		 *            the position
+		 * @param speed
+		 *            the speed
+		 * @param environment
+		 *            the environment
+		 * @param goalEvaluator
+		 *            the goal evaluator
+		 * @param r
+		 *            the random instance
+		 */
+		RestartingBoid(Position position, double speed, Environment environment, GoalEvaluator goalEvaluator,
+				Random r) {
+			super(position, speed, speed * 3, 5d, 1d, environment, goalEvaluator, r);
+		}
+
+		/**
+		 * Decide where to go next, starting over once every node was visited.
+		 */
+		@Override
+		protected void decide() {
+			this.decisions++;
+			if (this.pathTaken.size() >= getGraph().getNumberOfNodes()) {
+				this.pathTaken.clear();
+				this.pathTaken.offer(this.pos.getFrom());
+			}
+			super.decide();
+		}
+	}
+}
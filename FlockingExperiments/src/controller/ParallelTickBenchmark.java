@@ -0,0 +1,241 @@
+package controller;
+
+import goal.GoalEvaluator;
+import goal.TSPGoalEvaluator;
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Position;
+import graph.TraditionalGraph;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Random;
+
+import agent.Boid;
+import agent.Environment;
+import agent.ParallelMover;
+import util.SplitMix64Random;
+
+/**
+ * Benchmark for ticks moved by a {@link ParallelMover} against ticks moving the boids one by one, over the same
+ * population of explorers. Both kinds of parallel ticks are run with one thread, which shows their overhead, and with
+ * the given number of threads. After each run, the occupancy of every segment must match the boids on it and stay
+ * within the capacity, and deterministic ticks must leave the boids in the same places for any number of threads.
+ * Deterministic ticks are also run over the same graph computing its edge lengths through a row cache, which must
+ * give the same result.
+ */
+public class ParallelTickBenchmark {
+
+	/** The graph used when none is given. */
+	private static final String DEFAULT_GRAPH = "testdata/rat783.tsp";
+
+	/** The number of boids used when none is given. */
+	private static final int DEFAULT_BOIDS = 200000;
+
+	/** The ticks run before measuring. */
+	private static final int WARM_UP_TICKS = 5;
+
+	/** The ticks measured. */
+	private static final int MEASURED_TICKS = 20;
+
+	/** The candidate list size, so decisions don't dominate the tick on large graphs. */
+	private static final int CANDIDATE_LIST_SIZE = 10;
+
+	/** The boid speed. */
+	private static final double SPEED = 2d;
+
+	/** The rows of distances cached by the graph with computed edge lengths, few so rows are evicted all the time. */
+	private static final int ROW_CACHE_SIZE = 16;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments, optionally the TSPLIB file, the number of boids and the number of threads
+	 * @throws IOException
+	 *             if there are any issues while reading the graph
+	 */
+	public static void main(String args[]) throws IOException {
+		String pathToGraph = args.length > 0 ? args[0] : DEFAULT_GRAPH;
+		int boids = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BOIDS;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		TraditionalGraph world = GraphReaderTSPLIB.generateCachedGraphFromFile(pathToGraph);
+		world.setCandidateListSize(CANDIDATE_LIST_SIZE);
+
+		Environment sequential = spawnEnvironment(world, boids);
+		System.out.println("boids: " + sequential.countAllBoids() + ", threads: " + threads);
+		double sequentialTime = run(sequential, null);
+		System.out.println(String.format(Locale.US, "sequential:            %10.1f ms per tick", sequentialTime));
+		checkOccupancy(sequential);
+
+		int[] threadCounts = threads > 1 ? new int[] { 1, threads } : new int[] { 1 };
+		String deterministicChecksum = null;
+		for (boolean deterministic : new boolean[] { true, false }) {
+			String firstChecksum = null;
+			for (int t : threadCounts) {
+				Environment environment = spawnEnvironment(world, boids);
+				ParallelMover mover = new ParallelMover(t, deterministic);
+				double time = run(environment, mover);
+				mover.shutdown();
+
+				String checksum = checksum(environment);
+				System.out.println(String.format(Locale.US, "%s, %2d threads: %10.1f ms per tick, %.2fx, checksum %s",
+						deterministic ? "deterministic" : "relaxed      ", t, time, sequentialTime / time, checksum));
+				checkOccupancy(environment);
+				if (!deterministic) {
+					continue;
+				}
+				if (firstChecksum == null) {
+					firstChecksum = checksum;
+					deterministicChecksum = checksum;
+				} else if (!firstChecksum.equals(checksum)) {
+					System.out.println("FAILED: the result depends on the number of threads.");
+					System.exit(1);
+				}
+			}
+		}
+
+		TraditionalGraph computedWorld = GraphReaderTSPLIB.generateGraphWithComputedDistancesFromFile(pathToGraph,
+				ROW_CACHE_SIZE);
+		computedWorld.setCandidateListSize(CANDIDATE_LIST_SIZE);
+		for (int t : threadCounts) {
+			Environment environment = spawnEnvironment(computedWorld, boids);
+			ParallelMover mover = new ParallelMover(t, true);
+			double time = run(environment, mover);
+			mover.shutdown();
+
+			String checksum = checksum(environment);
+			System.out.println(String.format(Locale.US, "computed lengths, %2d threads: %7.1f ms per tick, checksum %s",
+					t, time, checksum));
+			checkOccupancy(environment);
+			if (!deterministicChecksum.equals(checksum)) {
+				System.out.println("FAILED: the result over computed edge lengths differs.");
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Creates an environment over a fresh flocking graph and spawns explorers at random free places, always the same
+	 * for the same graph.
+	 *
+	 * @param world
+	 *            the graph
+	 * @param boids
+	 *            the number of boids
+	 * @return the environment
+	 */
+	private static Environment spawnEnvironment(TraditionalGraph world, int boids) {
+		FlockingGraph graph = new FlockingGraph(world, FlockingGraph.DEFAULT_SEGMENT_LENGTH,
+				FlockingGraph.DEFAULT_SEGMENT_CAPACITY);
+		graph.resetSegments();
+		Environment environment = new Environment(graph);
+		GoalEvaluator goal = new TSPGoalEvaluator();
+		SplitMix64Random boidRandom = new SplitMix64Random(0);
+		Random r = new Random(1);
+		for (int i = 0; i < boids; i++) {
+			Position position = PopulationTickBenchmark.randomFreePosition(graph, r);
+			if (position == null) {
+				break;
+			}
+			new Boid(position, PopulationTickBenchmark.randomSpeed(r), SPEED * 3, 5d, 1d, environment, goal,
+					boidRandom.split());
+		}
+		environment.applyPendingChanges();
+		return environment;
+	}
+
+	/**
+	 * Runs the warm-up and the measured ticks.
+	 *
+	 * @param environment
+	 *            the environment
+	 * @param mover
+	 *            the parallel mover, or null to move the boids one by one
+	 * @return the milliseconds per measured tick
+	 */
+	private static double run(Environment environment, ParallelMover mover) {
+		for (int t = 0; t < WARM_UP_TICKS; t++) {
+			tick(environment, mover);
+		}
+		long start = System.nanoTime();
+		for (int t = 0; t < MEASURED_TICKS; t++) {
+			tick(environment, mover);
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_TICKS;
+	}
+
+	/**
+	 * Moves every boid of the environment once, like the main loop of the problem.
+	 *
+	 * @param environment
+	 *            the environment
+	 * @param mover
+	 *            the parallel mover, or null to move the boids one by one
+	 */
+	private static void tick(Environment environment, ParallelMover mover) {
+		environment.applyPendingChanges();
+		if (mover != null) {
+			mover.moveAll(environment);
+		} else {
+			List<Boid> boids = environment.getAllBoids();
+			for (int i = 0; i < boids.size(); i++) {
+				Boid b = boids.get(i);
+				b.tryToMove(b.getSpeed());
+			}
+		}
+		environment.applyPendingChanges();
+	}
+
+	/**
+	 * Sums up where the boids are.
+	 *
+	 * @param environment
+	 *            the environment
+	 * @return the checksum
+	 */
+	private static String checksum(Environment environment) {
+		long edges = 0;
+		double distances = 0d;
+		for (Boid b : environment.getAllBoids()) {
+			edges = edges * 31 + b.getPos().edge.getId();
+			distances += b.getPos().getDistanceFromStart();
+		}
+		return Long.toHexString(edges) + "/" + String.format(Locale.US, "%.3f", distances);
+	}
+
+	/**
+	 * Counts the boids on each segment and compares the counts with the segment occupancies, stopping if they don't
+	 * match or go over the capacity.
+	 *
+	 * @param environment
+	 *            the environment
+	 */
+	private static void checkOccupancy(Environment environment) {
+		FlockingGraph graph = environment.getFlockingGraph();
+		Map<Long, Integer> counts = new HashMap<>();
+		Map<Long, Edge> edges = new HashMap<>();
+		for (Boid b : environment.getAllBoids()) {
+			Position pos = b.getPos();
+			long key = ((long) pos.edge.getId() << 32) | graph.getSegmentIndexForPosition(pos);
+			Integer count = counts.get(key);
+			counts.put(key, count == null ? 1 : count + 1);
+			edges.put(key, pos.edge);
+		}
+
+		for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+			Edge edge = edges.get(entry.getKey());
+			int segment = (int) entry.getKey().longValue();
+			int occupancy = graph.getOccupancy(edge, segment);
+			if (occupancy != entry.getValue() || occupancy > graph.getEdgeCapacity(edge)) {
+				System.out.println("FAILED: segment " + segment + " of " + edge + " has " + entry.getValue()
+						+ " boids and an occupancy of " + occupancy + ".");
+				System.exit(1);
+			}
+		}
+	}
+}
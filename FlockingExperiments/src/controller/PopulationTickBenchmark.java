@@ -0,0 +1,161 @@
+package controller;
+
+import goal.GoalEvaluator;
+import goal.TSPGoalEvaluator;
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Position;
+import graph.TraditionalGraph;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import agent.Boid;
+import agent.BoidPopulation;
+import agent.Environment;
+import util.SplitMix64Random;
+
+/**
+ * Benchmark for a tick over a large population of explorers. Compares one object per boid, moved through the
+ * environment like in the main loop of the problem, with the same boids kept in a {@link BoidPopulation}.
+ */
+public class PopulationTickBenchmark {
+
+	/** The graph used when none is given. */
+	private static final String DEFAULT_GRAPH = "testdata/rat783.tsp";
+
+	/** The number of boids used when none is given. */
+	private static final int DEFAULT_BOIDS = 200000;
+
+	/** The ticks run before measuring. */
+	private static final int WARM_UP_TICKS = 5;
+
+	/** The ticks measured. */
+	private static final int MEASURED_TICKS = 20;
+
+	/** The candidate list size, so decisions don't dominate the tick on large graphs. */
+	private static final int CANDIDATE_LIST_SIZE = 10;
+
+	/** How many random places to try for each boid before deciding the graph is full. */
+	private static final int SPAWN_ATTEMPTS = 1000;
+
+	/** The boid speed. */
+	private static final double SPEED = 2d;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments, optionally the TSPLIB file and the number of boids
+	 * @throws IOException
+	 *             if there are any issues while reading the graph
+	 */
+	public static void main(String args[]) throws IOException {
+		String pathToGraph = args.length > 0 ? args[0] : DEFAULT_GRAPH;
+		int boids = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BOIDS;
+
+		TraditionalGraph world = GraphReaderTSPLIB.generateCachedGraphFromFile(pathToGraph);
+		world.setCandidateListSize(CANDIDATE_LIST_SIZE);
+
+		FlockingGraph populationGraph = new FlockingGraph(world, FlockingGraph.DEFAULT_SEGMENT_LENGTH,
+				FlockingGraph.DEFAULT_SEGMENT_CAPACITY);
+		populationGraph.resetSegments();
+		BoidPopulation population = new BoidPopulation(populationGraph, 5d, 1d, SPEED * 3, new SplitMix64Random(0));
+		Random r = new Random(1);
+		for (int i = 0; i < boids; i++) {
+			Position position = randomFreePosition(populationGraph, r);
+			if (position == null) {
+				System.out.println("The graph is full after " + i + " boids.");
+				boids = i;
+				break;
+			}
+			population.spawnExplorer(position, randomSpeed(r));
+		}
+
+		FlockingGraph objectGraph = new FlockingGraph(world, FlockingGraph.DEFAULT_SEGMENT_LENGTH,
+				FlockingGraph.DEFAULT_SEGMENT_CAPACITY);
+		objectGraph.resetSegments();
+		Environment environment = new Environment(objectGraph);
+		GoalEvaluator goal = new TSPGoalEvaluator();
+		Random objectRandom = new Random(0);
+		r = new Random(1);
+		for (int i = 0; i < boids; i++) {
+			Position position = randomFreePosition(objectGraph, r);
+			new Boid(position, randomSpeed(r), SPEED * 3, 5d, 1d, environment, goal, objectRandom);
+		}
+
+		for (int t = 0; t < WARM_UP_TICKS; t++) {
+			population.tick();
+			tick(environment);
+		}
+
+		long start = System.nanoTime();
+		for (int t = 0; t < MEASURED_TICKS; t++) {
+			tick(environment);
+		}
+		double objectTime = (System.nanoTime() - start) / 1e6 / MEASURED_TICKS;
+
+		start = System.nanoTime();
+		for (int t = 0; t < MEASURED_TICKS; t++) {
+			population.tick();
+		}
+		double populationTime = (System.nanoTime() - start) / 1e6 / MEASURED_TICKS;
+
+		System.out.println("boids: " + population.size() + " / " + environment.countAllBoids());
+		System.out.println(String.format(Locale.US, "objects:    %10.1f ms per tick", objectTime));
+		System.out.println(String.format(Locale.US, "population: %10.1f ms per tick", populationTime));
+	}
+
+	/**
+	 * Moves every boid of the environment once, like the main loop of the problem.
+	 *
+	 * @param environment
+	 *            the environment
+	 */
+	private static void tick(Environment environment) {
+		environment.applyPendingChanges();
+		List<Boid> boids = environment.getAllBoids();
+		for (int i = 0; i < boids.size(); i++) {
+			Boid b = boids.get(i);
+			b.tryToMove(b.getSpeed());
+		}
+	}
+
+	/**
+	 * Gets a random position with space for one more boid, on an edge to a candidate neighbor.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param r
+	 *            the random instance
+	 * @return the position, or null if no space was found
+	 */
+	static Position randomFreePosition(FlockingGraph graph, Random r) {
+		for (int attempt = 0; attempt < SPAWN_ATTEMPTS; attempt++) {
+			int from = r.nextInt(graph.getNumberOfNodes());
+			int[] candidates = graph.getCandidateList(from);
+			if (candidates.length == 0) {
+				continue;
+			}
+			Edge edge = graph.getEdge(from, candidates[r.nextInt(candidates.length)]);
+			double distance = r.nextDouble() * (edge.getLength() - FlockingGraph.MINIMUM_DISTANCE_MARGIN);
+			if (!graph.isSegmentFull(edge, graph.getSegmentIndexForDistance(edge, distance))) {
+				return new Position(edge, distance);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets a random speed around the boid speed.
+	 *
+	 * @param r
+	 *            the random instance
+	 * @return the speed
+	 */
+	static double randomSpeed(Random r) {
+		return SPEED * (0.8 + r.nextDouble() * 0.4);
+	}
+}
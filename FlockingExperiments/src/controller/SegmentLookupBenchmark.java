@@ -0,0 +1,146 @@
+package controller;
+
+import graph.Edge;
+import graph.FlockingGraph;
+import graph.Position;
+import graph.Segment;
+import graph.TraditionalGraph;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Microbenchmark for finding the segment that contains a position. Compares the arithmetic lookup of the flocking
+ * graph with a linear scan over the segments of the edge, for edges of increasing length. The lookup time should not
+ * grow with the edge length, while the scan grows linearly.
+ */
+public class SegmentLookupBenchmark {
+
+	/** The edge lengths to benchmark. */
+	private static final int[] EDGE_LENGTHS = { 10, 50, 100, 500, 1000, 5000 };
+
+	/** The number of positions looked up per measurement. */
+	private static final int LOOKUPS = 200000;
+
+	/** The number of positions looked up per measurement with the linear scan. */
+	private static final int SCAN_LOOKUPS = 2000;
+
+	/** Accumulates lookup results, so the JIT cannot drop them. */
+	private static long sink;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments
+	 */
+	public static void main(String args[]) {
+		// a path with one edge per length
+		TraditionalGraph world = new TraditionalGraph(EDGE_LENGTHS.length + 1);
+		for (int i = 0; i < EDGE_LENGTHS.length; i++) {
+			world.setEdgeLength(i, i + 1, EDGE_LENGTHS[i]);
+		}
+		FlockingGraph graph = new FlockingGraph(world, FlockingGraph.DEFAULT_SEGMENT_LENGTH,
+				FlockingGraph.DEFAULT_SEGMENT_CAPACITY);
+
+		// warm up
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < EDGE_LENGTHS.length; i++) {
+				Position[] positions = randomPositions(graph.getEdge(i, i + 1), LOOKUPS, new Random(round));
+				timeIndexLookup(graph, positions);
+				timeSegmentLookup(graph, positions);
+				timeLinearScan(graph, positions, SCAN_LOOKUPS);
+			}
+		}
+
+		System.out.println("edge length | index ns/op | segment ns/op | linear scan ns/op");
+		for (int i = 0; i < EDGE_LENGTHS.length; i++) {
+			Position[] positions = randomPositions(graph.getEdge(i, i + 1), LOOKUPS, new Random(i));
+			double index = timeIndexLookup(graph, positions);
+			double segment = timeSegmentLookup(graph, positions);
+			double scan = timeLinearScan(graph, positions, SCAN_LOOKUPS);
+			System.out.println(String.format(Locale.US, "%11d | %11.1f | %13.1f | %17.1f", EDGE_LENGTHS[i], index,
+					segment, scan));
+		}
+		System.out.println("(checksum " + sink + ")");
+	}
+
+	/**
+	 * Creates random positions along an edge.
+	 *
+	 * @param edge
+	 *            the edge
+	 * @param count
+	 *            the number of positions
+	 * @param r
+	 *            the random generator
+	 * @return the positions
+	 */
+	private static Position[] randomPositions(Edge edge, int count, Random r) {
+		Position[] positions = new Position[count];
+		for (int i = 0; i < count; i++) {
+			positions[i] = new Position(edge, r.nextDouble() * edge.getLength());
+		}
+		return positions;
+	}
+
+	/**
+	 * Times the arithmetic lookup of segment indexes.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param positions
+	 *            the positions to look up
+	 * @return the average nanoseconds per lookup
+	 */
+	private static double timeIndexLookup(FlockingGraph graph, Position[] positions) {
+		long start = System.nanoTime();
+		for (Position p : positions) {
+			sink += graph.getSegmentIndexForPosition(p);
+		}
+		return (System.nanoTime() - start) / (double) positions.length;
+	}
+
+	/**
+	 * Times the arithmetic lookup of segments, including the creation of the segment view.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param positions
+	 *            the positions to look up
+	 * @return the average nanoseconds per lookup
+	 */
+	private static double timeSegmentLookup(FlockingGraph graph, Position[] positions) {
+		long start = System.nanoTime();
+		for (Position p : positions) {
+			sink += graph.getSegmentForPosition(p).index;
+		}
+		return (System.nanoTime() - start) / (double) positions.length;
+	}
+
+	/**
+	 * Times finding segments by scanning the segments of the edge until one contains the position.
+	 *
+	 * @param graph
+	 *            the graph
+	 * @param positions
+	 *            the positions to look up
+	 * @param count
+	 *            how many of the positions to look up
+	 * @return the average nanoseconds per lookup
+	 */
+	private static double timeLinearScan(FlockingGraph graph, Position[] positions, int count) {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			List<Segment> segments = graph.getSegmentsForEdge(positions[i].edge);
+			for (Segment s : segments) {
+				if (s.contains(positions[i])) {
+					sink += s.index;
+					break;
+				}
+			}
+		}
+		return (System.nanoTime() - start) / (double) count;
+	}
+}
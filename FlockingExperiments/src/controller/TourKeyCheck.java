@@ -0,0 +1,149 @@
+package controller;
+
+import graph.Tour;
+import graph.TourKey;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Check of the keys telling which tours are the same. Random closed tours, with nodes visited more than once, are
+ * rotated and reversed, and their keys must stay the same, hash included. Random pairs of closed tours must have the
+ * same key exactly when one is a rotation or reversal of the other, found by trying them all. Open tours must keep
+ * their direction.
+ */
+public class TourKeyCheck {
+
+	/** The number of random tours checked. */
+	private static final int TOURS = 20000;
+
+	/** The smallest number of stops of a random tour. */
+	private static final int MIN_STOPS = 3;
+
+	/** The largest number of stops of a random tour. */
+	private static final int MAX_STOPS = 10;
+
+	/** The number of nodes the stops are picked from, few so nodes are visited more than once. */
+	private static final int NODES = 6;
+
+	/**
+	 * The main method, for testing only.
+	 *
+	 * @param args
+	 *            the arguments, optionally the seed
+	 */
+	public static void main(String args[]) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+		Random r = new Random(seed);
+
+		int failures = 0;
+		for (int i = 0; i < TOURS; i++) {
+			int[] stops = randomStops(r);
+			int[] moved = rotate(stops, r.nextInt(stops.length), r.nextBoolean());
+			TourKey key = TourKey.of(closedTour(stops));
+			TourKey movedKey = TourKey.of(closedTour(moved));
+			if (!key.equals(movedKey) || key.longHash() != movedKey.longHash()) {
+				failures++;
+				System.out.println("Rotated or reversed, different keys: " + key + " and " + movedKey);
+			}
+
+			int[] other = randomStops(r);
+			boolean same = isRotationOrReversal(stops, other);
+			if (key.equals(TourKey.of(closedTour(other))) != same) {
+				failures++;
+				System.out.println((same ? "Same tours, different keys: " : "Different tours, same keys: ") + key
+						+ " and " + TourKey.of(closedTour(other)));
+			}
+		}
+
+		Tour open = new Tour();
+		Tour reversed = new Tour();
+		for (int node = 0; node < MIN_STOPS; node++) {
+			open.offer(node);
+			reversed.offer(MIN_STOPS - 1 - node);
+		}
+		if (TourKey.of(open).equals(TourKey.of(reversed))) {
+			failures++;
+			System.out.println("Open tour and its reversal, same keys: " + TourKey.of(open));
+		}
+
+		if (failures == 0) {
+			System.out.println("OK: " + TOURS + " tours, the keys matched rotations and reversals.");
+		} else {
+			System.out.println("FAILED: " + failures + " failures.");
+		}
+	}
+
+	/**
+	 * Picks the stops of a random closed tour.
+	 *
+	 * @param r
+	 *            the random instance
+	 * @return the stops, without going back to the first one
+	 */
+	private static int[] randomStops(Random r) {
+		int[] stops = new int[MIN_STOPS + r.nextInt(MAX_STOPS - MIN_STOPS + 1)];
+		for (int i = 0; i < stops.length; i++) {
+			stops[i] = r.nextInt(NODES);
+		}
+		return stops;
+	}
+
+	/**
+	 * Rotates the stops of a closed tour, optionally walking it backwards.
+	 *
+	 * @param stops
+	 *            the stops
+	 * @param start
+	 *            the position of the new first stop
+	 * @param reversed
+	 *            whether to walk the tour backwards
+	 * @return the rotated stops
+	 */
+	private static int[] rotate(int[] stops, int start, boolean reversed) {
+		int count = stops.length;
+		int[] rotated = new int[count];
+		for (int i = 0; i < count; i++) {
+			int j = reversed ? start - i : start + i;
+			rotated[i] = stops[((j % count) + count) % count];
+		}
+		return rotated;
+	}
+
+	/**
+	 * Tells if the stops of a closed tour are a rotation or reversal of another, trying them all.
+	 *
+	 * @param stops
+	 *            the stops
+	 * @param other
+	 *            the stops of the other tour
+	 * @return true, if both are the same closed tour
+	 */
+	private static boolean isRotationOrReversal(int[] stops, int[] other) {
+		if (stops.length != other.length) {
+			return false;
+		}
+		for (int start = 0; start < stops.length; start++) {
+			if (Arrays.equals(rotate(stops, start, false), other) || Arrays.equals(rotate(stops, start, true), other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds the closed tour going through the stops and back to the first one.
+	 *
+	 * @param stops
+	 *            the stops
+	 * @return the tour
+	 */
+	private static Tour closedTour(int[] stops) {
+		Tour tour = new Tour();
+		for (int stop : stops) {
+			tour.offer(stop);
+		}
+		tour.offer(stops[0]);
+		return tour;
+	}
+}
@@ -11,7 +11,9 @@ import graph.Tour;
 public interface GoalEvaluator {
 
 	/**
-	 * Checks if is goal.
+	 * Checks if is goal. Boids check at every node they cross, so this should take constant time: the path taken keeps
+	 * the set of locations visited and how many there are (see {@link Tour#contains(int)} and
+	 * {@link Tour#getVisitedCount()}), there is no need to go through it.
 	 * 
 	 * @param graph
 	 *            the graph
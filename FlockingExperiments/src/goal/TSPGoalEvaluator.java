@@ -27,7 +27,8 @@ public class TSPGoalEvaluator implements GoalEvaluator {
 	}
 
 	/**
-	 * Tests for a completed tour.
+	 * Tests for a completed tour, back at the start after visiting every node. The nodes are told apart by their
+	 * index, so the tour visited them all when it visited as many different ones as the graph has.
 	 * 
 	 * @param graph
 	 *            the graph
@@ -36,15 +37,9 @@ public class TSPGoalEvaluator implements GoalEvaluator {
 	 * @return true, if complete TSP tour
 	 */
 	public boolean completedTour(FlockingGraph graph, Tour pathTaken) {
-		if (!pathTaken.firstLocation().equals(pathTaken.lastLocation())) {
+		if (pathTaken.firstLocation() != pathTaken.lastLocation()) {
 			return false;
 		}
-		for (int i = 0; i < graph.getNumberOfNodes(); i++) {
-			if (!pathTaken.locations.contains(new Integer(i))) {
-				return false;
-			}
-		}
-
-		return true;
+		return pathTaken.getVisitedCount() == graph.getNumberOfNodes();
 	}
 }
@@ -16,6 +16,9 @@ public final class Edge implements Comparable<Edge> {
 	/** The length. */
 	private final int length;
 
+	/** The dense id of this edge in its graph, or {@link TraditionalGraph#INVALID_VALUE} if it has none. */
+	private final int id;
+
 	/**
 	 * Instantiates a new edge.
 	 * 
@@ -27,9 +30,26 @@ public final class Edge implements Comparable<Edge> {
 	 *            the length
 	 */
 	public Edge(int from, int to, int length) {
+		this(from, to, length, TraditionalGraph.INVALID_VALUE);
+	}
+
+	/**
+	 * Instantiates a new edge with a dense id in its graph.
+	 * 
+	 * @param from
+	 *            the from
+	 * @param to
+	 *            the to
+	 * @param length
+	 *            the length
+	 * @param id
+	 *            the id
+	 */
+	public Edge(int from, int to, int length, int id) {
 		this.fromNodeIndex = from;
 		this.toNodeIndex = to;
 		this.length = length;
+		this.id = id;
 	}
 
 	/**
@@ -41,6 +61,15 @@ public final class Edge implements Comparable<Edge> {
 		return this.fromNodeIndex;
 	}
 
+	/**
+	 * Gets the dense id of this edge in its graph.
+	 * 
+	 * @return the id, or {@link TraditionalGraph#INVALID_VALUE} if the edge does not belong to a graph index
+	 */
+	public int getId() {
+		return this.id;
+	}
+
 	/**
 	 * Gets the length.
 	 * 
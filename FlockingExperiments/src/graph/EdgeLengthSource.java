@@ -0,0 +1,43 @@
+package graph;
+
+/**
+ * Source of the edge lengths of a complete graph that keeps neither a distance matrix nor an edge index (see
+ * {@link TraditionalGraph#hasComputedEdgeLengths()}).
+ */
+interface EdgeLengthSource {
+
+	/**
+	 * Computes the length of an edge. Only called for distinct nodes.
+	 * 
+	 * @param nodeIndexA
+	 *            the node index a
+	 * @param nodeIndexB
+	 *            the node index b
+	 * @return the edge length
+	 */
+	public int computeEdgeLength(int nodeIndexA, int nodeIndexB);
+
+	/**
+	 * Computes the length of an edge, like {@link #computeEdgeLength(int, int)}, but safe to call from several threads
+	 * at once. Only called for distinct nodes.
+	 * 
+	 * @param nodeIndexA
+	 *            the node index a
+	 * @param nodeIndexB
+	 *            the node index b
+	 * @return the edge length
+	 */
+	public int computeEdgeLengthConcurrently(int nodeIndexA, int nodeIndexB);
+
+	/**
+	 * Finds the closest neighbors of a node, sorted as in the candidate lists: by edge length, ties broken by node
+	 * index.
+	 * 
+	 * @param nodeIndex
+	 *            the node index
+	 * @param maxListSize
+	 *            the max list size
+	 * @return the closest neighbors
+	 */
+	public int[] findClosestNeighbors(int nodeIndex, int maxListSize);
+}
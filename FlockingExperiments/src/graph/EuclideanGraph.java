@@ -5,19 +5,141 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class EuclideanGraph extends TraditionalGraph {
+public class EuclideanGraph extends TraditionalGraph implements EdgeLengthSource {
 
 	private static final String DIMENSION_STRING = "DIMENSION";
 	
 	private double[][] nodeCoords;
 	
+	/** Spatial index over nodeCoords, built on first query. */
+	private KdTree spatialIndex;
+	
+	/**
+	 * The most recently used rows of distances, for graphs with computed edge lengths. Null if not caching. Kept in
+	 * access order, so even reading it changes it: it is for one thread only.
+	 */
+	private Map<Integer, int[]> rowCache;
+	
 	public EuclideanGraph(int numberOfNodes) {
 		super(numberOfNodes);
 		nodeCoords = new double[numberOfNodes][2];
 	}
 
+	/**
+	 * Creates a compressed graph where each city is only linked to its nearest cities (both ways).
+	 * 
+	 * @param nodeCoords
+	 *            the coordinates of each city
+	 * @param nearestNeighbors
+	 *            how many of the nearest cities to link each city to
+	 */
+	private EuclideanGraph(double[][] nodeCoords, int nearestNeighbors) {
+		super(nodeCoords.length, new int[0], new int[0], new int[0], 0);
+		this.nodeCoords = nodeCoords;
+
+		int numberOfLinks = 0;
+		int[] linksFrom = new int[nodeCoords.length * Math.max(0, Math.min(nearestNeighbors, nodeCoords.length - 1))];
+		int[] linksTo = new int[linksFrom.length];
+		int[] linkLengths = new int[linksFrom.length];
+		for (int i = 0; i < nodeCoords.length; i++) {
+			for (int neighbor : getClosestCities(i, nearestNeighbors)) {
+				linksFrom[numberOfLinks] = i;
+				linksTo[numberOfLinks] = neighbor;
+				linkLengths[numberOfLinks] = getDistance(nodeCoords[i], nodeCoords[neighbor]);
+				numberOfLinks++;
+			}
+		}
+		buildCompressedIndex(linksFrom, linksTo, linkLengths, numberOfLinks);
+	}
+
+	/**
+	 * Creates a complete graph whose distances are computed from the coordinates when needed, instead of being kept in
+	 * a distance matrix.
+	 * 
+	 * @param nodeCoords
+	 *            the coordinates of each city
+	 */
+	EuclideanGraph(double[][] nodeCoords) {
+		super(nodeCoords.length, true);
+		this.nodeCoords = nodeCoords;
+	}
+
+	/**
+	 * Creates a complete graph whose distance matrix is kept in a buffer (e.g. a memory-mapped file) instead of the
+	 * heap.
+	 * 
+	 * @param nodeCoords
+	 *            the coordinates of each city
+	 * @param distances
+	 *            the distance matrix, row by row
+	 */
+	EuclideanGraph(double[][] nodeCoords, IntBuffer distances) {
+		super(nodeCoords.length, distances);
+		this.nodeCoords = nodeCoords;
+	}
+
 	public static EuclideanGraph loadGraph(File graphData) throws IOException {
+		double[][] coords = readCoordinates(graphData);
+		if (coords == null) {
+			return null;
+		}
+
+		EuclideanGraph graph = new EuclideanGraph(coords.length);
+		for (int i = 0; i < coords.length; i++) {
+			graph.addCity(i, coords[i][0], coords[i][1]);
+		}
+		return graph;
+	}
+
+	/**
+	 * Loads a compressed graph where each city is only linked to its nearest cities, without computing every pairwise
+	 * distance.
+	 * 
+	 * @param graphData
+	 *            the TSPLIB file
+	 * @param nearestNeighbors
+	 *            how many of the nearest cities to link each city to
+	 * @return the graph
+	 * @throws IOException
+	 *             if there are any issues while reading the file
+	 */
+	public static EuclideanGraph loadGraph(File graphData, int nearestNeighbors) throws IOException {
+		double[][] coords = readCoordinates(graphData);
+		if (coords == null) {
+			return null;
+		}
+		return new EuclideanGraph(coords, nearestNeighbors);
+	}
+
+	/**
+	 * Loads a complete graph that computes its distances from the coordinates when needed, so no distance matrix is
+	 * kept. Unless restricted with {@link #setCandidateListSize(int)}, the candidate lists still take as much memory as
+	 * a matrix.
+	 * 
+	 * @param graphData
+	 *            the TSPLIB file
+	 * @param rowCacheSize
+	 *            how many rows of distances to keep cached, 0 to always compute them
+	 * @return the graph
+	 * @throws IOException
+	 *             if there are any issues while reading the file
+	 */
+	public static EuclideanGraph loadGraphWithComputedDistances(File graphData, int rowCacheSize) throws IOException {
+		double[][] coords = readCoordinates(graphData);
+		if (coords == null) {
+			return null;
+		}
+		EuclideanGraph graph = new EuclideanGraph(coords);
+		graph.setRowCacheSize(rowCacheSize);
+		return graph;
+	}
+
+	static double[][] readCoordinates(File graphData) throws IOException {
 		BufferedReader reader = null;
 		try {
 			FileReader fileReader = new FileReader(graphData);
@@ -29,7 +151,7 @@ public class EuclideanGraph extends TraditionalGraph {
 		}
 
 		int numberOfCities = readGraphDimensions(reader);
-		EuclideanGraph graph = new EuclideanGraph(numberOfCities);
+		double[][] coords = new double[numberOfCities][2];
 		
 		// go through the rest of the header
 		String line = reader.readLine();
@@ -42,27 +164,126 @@ public class EuclideanGraph extends TraditionalGraph {
 			line = line.trim();
 			int firstCoordIdx = line.indexOf(' ') + 1;
 			int secondCoordIdx = line.lastIndexOf(' ') + 1;
-			double cityX = Double.parseDouble(line.substring(firstCoordIdx, secondCoordIdx-1));
-			double cityY = Double.parseDouble(line.substring(secondCoordIdx));
-			graph.addCity(currentCity, cityX, cityY);
+			coords[currentCity][0] = Double.parseDouble(line.substring(firstCoordIdx, secondCoordIdx-1));
+			coords[currentCity][1] = Double.parseDouble(line.substring(secondCoordIdx));
 			
 			line = reader.readLine();
 			currentCity++;
 		}
+		reader.close();
 		
-		return graph;
+		return coords;
 	}
 
 	public void addCity(int cityId, double cityX, double cityY) {
 		nodeCoords[cityId][0] = cityX;
 		nodeCoords[cityId][1] = cityY;
+		spatialIndex = null;
+		if (hasComputedEdgeLengths()) {
+			// distances come straight from the coordinates
+			candidateLists = null;
+			builtDistanceMatrix = null;
+			if (rowCache != null) {
+				rowCache.clear();
+			}
+			return;
+		}
 		for (int i=0; i<cityId; i++) {
 			// add edges from the new city to all the old ones
-			int distance = Math.round(((getDistance(nodeCoords[cityId], nodeCoords[i]))));
+			int distance = getDistance(nodeCoords[cityId], nodeCoords[i]);
 			this.setEdgeLength(i, cityId, distance);
 		}	
 	}
 
+	/**
+	 * Keeps the most recently used rows of distances cached, for graphs with computed edge lengths. Each row takes as
+	 * much memory as a row of the distance matrix. The cache is not thread-safe, so {@link #computeEdgeLength(int, int)}
+	 * must be called from one thread at a time. Graphs read by several threads at once (see
+	 * {@link FlockingGraph#setConcurrentReads(boolean)}) compute their lengths with
+	 * {@link #computeEdgeLengthConcurrently(int, int)} instead, which never touches the cache.
+	 * 
+	 * @param rowCacheSize
+	 *            how many rows of distances to keep cached, 0 to always compute them
+	 */
+	public void setRowCacheSize(final int rowCacheSize) {
+		if (rowCacheSize <= 0) {
+			rowCache = null;
+			return;
+		}
+		rowCache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > rowCacheSize;
+			}
+		};
+	}
+
+	@Override
+	public int computeEdgeLength(int nodeIndexA, int nodeIndexB) {
+		if (rowCache == null) {
+			return getDistance(nodeCoords[nodeIndexA], nodeCoords[nodeIndexB]);
+		}
+		
+		int[] row = rowCache.get(nodeIndexA);
+		if (row == null) {
+			row = new int[numberOfNodes];
+			for (int i = 0; i < numberOfNodes; i++) {
+				row[i] = getDistance(nodeCoords[nodeIndexA], nodeCoords[i]);
+			}
+			rowCache.put(nodeIndexA, row);
+		}
+		return row[nodeIndexB];
+	}
+
+	@Override
+	public int computeEdgeLengthConcurrently(int nodeIndexA, int nodeIndexB) {
+		return getDistance(nodeCoords[nodeIndexA], nodeCoords[nodeIndexB]);
+	}
+
+	/**
+	 * Finds the closest cities using the spatial index, instead of computing every distance.
+	 */
+	@Override
+	public int[] findClosestNeighbors(int nodeIndex, int maxListSize) {
+		return getClosestCities(nodeIndex, maxListSize);
+	}
+
+	/**
+	 * Gets the closest cities to the given one as the candidate lists pick them: by rounded distance, ties broken by
+	 * the lowest index. The spatial index picks by exact distance, so the cities tied with the farthest of those at
+	 * its rounded distance are fetched too, and the closest are picked among them.
+	 * 
+	 * @param city
+	 *            the city
+	 * @param k
+	 *            how many cities to get
+	 * @return the k closest cities, closest first
+	 */
+	private int[] getClosestCities(int city, int k) {
+		int[] nearest = getNearestCities(city, k);
+		if (nearest.length == 0) {
+			return nearest;
+		}
+		int farthest = 0;
+		for (int neighbor : nearest) {
+			farthest = Math.max(farthest, getDistance(nodeCoords[city], nodeCoords[neighbor]));
+		}
+
+		// every city whose distance rounds to the farthest one or less
+		int[] tied = getCitiesWithinRadius(city, farthest + 0.5);
+		long[] keys = new long[tied.length];
+		for (int i = 0; i < tied.length; i++) {
+			keys[i] = ((long) getDistance(nodeCoords[city], nodeCoords[tied[i]]) << 32) | tied[i];
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < nearest.length; i++) {
+			nearest[i] = (int) keys[i];
+		}
+		return nearest;
+	}
+
 	public double[] getCityCoords(int city) {
 		return nodeCoords[city];
 	}
@@ -71,6 +292,39 @@ public class EuclideanGraph extends TraditionalGraph {
 		return nodeCoords;
 	}
 	
+	/**
+	 * Gets the nearest cities to the given one, closest first, using the spatial index.
+	 * 
+	 * @param city
+	 *            the city
+	 * @param k
+	 *            how many cities to get
+	 * @return the k nearest cities
+	 */
+	public int[] getNearestCities(int city, int k) {
+		return getSpatialIndex().getNearest(city, k);
+	}
+	
+	/**
+	 * Gets the cities within a distance of the given one, using the spatial index.
+	 * 
+	 * @param city
+	 *            the city
+	 * @param radius
+	 *            the radius
+	 * @return the cities within the radius, in increasing index order
+	 */
+	public int[] getCitiesWithinRadius(int city, double radius) {
+		return getSpatialIndex().getWithinRadius(city, radius);
+	}
+	
+	private KdTree getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new KdTree(nodeCoords);
+		}
+		return spatialIndex;
+	}
+	
 	private static int readGraphDimensions(BufferedReader reader)
 			throws IOException {
 		int numberOfCities = 0;
@@ -86,7 +340,11 @@ public class EuclideanGraph extends TraditionalGraph {
 		return numberOfCities;
 	}
 	
-	private static float getDistance(double[] coords1, double[] coords2) {
-		return (float)Math.sqrt((coords1[0] - coords2[0])*(coords1[0] - coords2[0]) + (coords1[1] - coords2[1])*(coords1[1] - coords2[1])); 
+	/**
+	 * Gets the distance between two cities, rounded to the nearest integer as TSPLIB does for EUC_2D instances.
+	 */
+	static int getDistance(double[] coords1, double[] coords2) {
+		double distance = Math.sqrt((coords1[0] - coords2[0])*(coords1[0] - coords2[0]) + (coords1[1] - coords2[1])*(coords1[1] - coords2[1]));
+		return (int) (distance + 0.5);
 	}
 }
@@ -0,0 +1,194 @@
+package graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary cache for TSPLIB instances. On first load, the parsed coordinates and the distance matrix are written next
+ * to the .tsp file. Later loads memory-map that file and read the distances straight from it. Several JVMs can then
+ * share the page cache instead of each parsing the file and holding its own matrix.
+ *
+ * The format is a header (magic, version, number of cities, whether the matrix is included, and the length and
+ * modification time of the source file), followed by the coordinates as pairs of doubles and, if included, the
+ * distance matrix as ints, row by row. A cache whose source file changed is rebuilt.
+ */
+public class EuclideanGraphCache {
+
+	/** The extension added to the source file name for its cache. */
+	public static final String EXTENSION = ".bin";
+
+	/** The Constant MAGIC, "FLKG". */
+	private static final int MAGIC = 0x464C4B47;
+
+	/** The format version, to be increased whenever the format changes. */
+	private static final int VERSION = 1;
+
+	/** The header size in bytes. */
+	private static final int HEADER_SIZE = 4 * 4 + 2 * 8;
+
+	/**
+	 * Loads a graph through its cache, writing the cache first if it is missing or stale. If the cache cannot be
+	 * written, or is too large to hold the distances, the graph computes them from the coordinates instead.
+	 *
+	 * @param graphData
+	 *            the TSPLIB file
+	 * @return the graph, reading its distances from the cache when it has them
+	 * @throws IOException
+	 *             if there are any issues while reading the file
+	 */
+	public static EuclideanGraph loadGraph(File graphData) throws IOException {
+		File cacheFile = getCacheFile(graphData);
+		EuclideanGraph graph = readCache(cacheFile, graphData);
+		if (graph != null) {
+			return graph;
+		}
+
+		double[][] coords = EuclideanGraph.readCoordinates(graphData);
+		if (coords == null) {
+			return null;
+		}
+		try {
+			writeCache(cacheFile, graphData, coords);
+		} catch (IOException e) {
+			System.out.println("Could not write graph cache " + cacheFile + ": " + e.getMessage());
+			return new EuclideanGraph(coords);
+		}
+
+		graph = readCache(cacheFile, graphData);
+		return graph != null ? graph : new EuclideanGraph(coords);
+	}
+
+	/**
+	 * Gets the cache file for a TSPLIB file.
+	 *
+	 * @param graphData
+	 *            the TSPLIB file
+	 * @return the cache file
+	 */
+	public static File getCacheFile(File graphData) {
+		return new File(graphData.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Reads a graph from its cache file.
+	 *
+	 * @param cacheFile
+	 *            the cache file
+	 * @param graphData
+	 *            the TSPLIB file the cache was made from
+	 * @return the graph, or null if there is no valid cache for the file
+	 * @throws IOException
+	 *             if there are any issues while reading the cache
+	 */
+	private static EuclideanGraph readCache(File cacheFile, File graphData) throws IOException {
+		if (!cacheFile.isFile() || cacheFile.length() < HEADER_SIZE) {
+			return null;
+		}
+
+		MappedByteBuffer buffer;
+		FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+		try {
+			// the mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		int numberOfCities = buffer.getInt();
+		boolean hasDistances = buffer.getInt() != 0;
+		if (buffer.getLong() != graphData.length() || buffer.getLong() != graphData.lastModified()
+				|| buffer.capacity() != getCacheSize(numberOfCities, hasDistances)) {
+			return null;
+		}
+
+		double[][] coords = new double[numberOfCities][2];
+		for (int i = 0; i < numberOfCities; i++) {
+			coords[i][0] = buffer.getDouble();
+			coords[i][1] = buffer.getDouble();
+		}
+
+		if (!hasDistances) {
+			return new EuclideanGraph(coords);
+		}
+		return new EuclideanGraph(coords, buffer.slice().asIntBuffer());
+	}
+
+	/**
+	 * Writes the cache for a TSPLIB file. The file is written under a temporary name and then moved into place, so
+	 * other JVMs never read a partial cache.
+	 *
+	 * @param cacheFile
+	 *            the cache file
+	 * @param graphData
+	 *            the TSPLIB file
+	 * @param coords
+	 *            the coordinates of each city
+	 * @throws IOException
+	 *             if there are any issues while writing the cache
+	 */
+	private static void writeCache(File cacheFile, File graphData, double[][] coords) throws IOException {
+		int numberOfCities = coords.length;
+		// a single mapping cannot go over 2GB, larger instances compute their distances
+		boolean hasDistances = getCacheSize(numberOfCities, true) <= Integer.MAX_VALUE;
+
+		File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(numberOfCities);
+				out.writeInt(hasDistances ? 1 : 0);
+				out.writeLong(graphData.length());
+				out.writeLong(graphData.lastModified());
+				for (double[] c : coords) {
+					out.writeDouble(c[0]);
+					out.writeDouble(c[1]);
+				}
+				if (hasDistances) {
+					for (int i = 0; i < numberOfCities; i++) {
+						for (int j = 0; j < numberOfCities; j++) {
+							out.writeInt(i == j ? TraditionalGraph.INVALID_VALUE : EuclideanGraph.getDistance(coords[i],
+									coords[j]));
+						}
+					}
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Gets the size of a cache file.
+	 *
+	 * @param numberOfCities
+	 *            the number of cities
+	 * @param hasDistances
+	 *            whether the distance matrix is included
+	 * @return the size in bytes
+	 */
+	private static long getCacheSize(int numberOfCities, boolean hasDistances) {
+		long size = HEADER_SIZE + 16L * numberOfCities;
+		if (hasDistances) {
+			size += 4L * numberOfCities * numberOfCities;
+		}
+		return size;
+	}
+}
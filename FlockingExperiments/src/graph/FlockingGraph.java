@@ -1,269 +1,1039 @@
-package graph;
-
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
-
-/**
- * Extension of a TraditionalGraph with all the complex attributes we need to run a flocking algorithm on top of it.
- * 
- * @author Balthazar. Created Jan 25, 2013.
- */
-public class FlockingGraph extends TraditionalGraph {
-
-	/** The Constant MINIMUM_DISTANCE_MARGIN. */
-	public static final double MINIMUM_DISTANCE_MARGIN = 0.01d;
-
-	/** The Constant DEFAULT_SEGMENT_LENGTH. */
-	public static final int DEFAULT_SEGMENT_LENGTH = 1;
-
-	/** The Constant DEFAULT_SEGMENT_CAPACITY. */
-	public static final int DEFAULT_SEGMENT_CAPACITY = 3;
-
-	/** The segment length. */
-	double segmentLength;
-
-	/** The capacity matrix. */
-	int[][] capacityMatrix; // same value for all edges unless flow problem
-
-	/** The edge segments. */
-	Map<Edge, LinkedList<Segment>> edgeSegments;
-
-	/**
-	 * Constructor of a graph for our flocking problem.
-	 * 
-	 * @param numberOfNodes
-	 *            the number of nodes
-	 * @param segmentLenght
-	 *            - The length of each segment in the graph
-	 * @param segmentCapacity
-	 *            - The maximum number of agents that fit inside one segment
-	 */
-	public FlockingGraph(int numberOfNodes, double segmentLenght, int segmentCapacity) {
-		super(numberOfNodes);
-		this.segmentLength = segmentLenght;
-		this.edgeSegments = new HashMap<Edge, LinkedList<Segment>>();
-		this.capacityMatrix = new int[this.numberOfNodes][this.numberOfNodes];
-		fillAll(segmentCapacity, this.capacityMatrix);
-	}
-
-	/**
-	 * Instantiates a new flocking graph.
-	 * 
-	 * @param tGraph
-	 *            the t graph
-	 */
-	public FlockingGraph(TraditionalGraph tGraph) {
-		this(tGraph, DEFAULT_SEGMENT_LENGTH, DEFAULT_SEGMENT_CAPACITY);
-	}
-
-	/**
-	 * Instantiates a new flocking graph.
-	 * 
-	 * @param tGraph
-	 *            the t graph
-	 * @param segmentLenght
-	 *            the segment lenght
-	 * @param segmentCapacity
-	 *            the segment capacity
-	 */
-	public FlockingGraph(TraditionalGraph tGraph, double segmentLenght, int segmentCapacity) {
-		this(tGraph.numberOfNodes, segmentLenght, segmentCapacity);
-		this.distanceMatrix = tGraph.distanceMatrix;
-	}
-
-	/**
-	 * Builds the all segments.
-	 */
-	public void buildAllSegments() {
-		for (int from = 0; from < this.numberOfNodes; from++) {
-			for (int to = 0; to < this.numberOfNodes; to++) {
-				int edgeValue = getEdgeLength(from, to);
-				if (edgeValue != INVALID_VALUE) {
-					Edge edge = getEdge(from, to);
-					buildSegmentsFor(edge);
-				}
-			}
-		}
-	}
-
-	/**
-	 * Builds the segments for an edge.
-	 * 
-	 * @param edge
-	 *            the edge
-	 */
-	public void buildSegmentsFor(Edge edge) {
-		if (this.edgeSegments.get(edge) == null) { // segments not yet created
-			LinkedList<Segment> segmentList = new LinkedList<Segment>();
-			Position segmentStart = new Position(edge, 0d);
-			Position segmentEnd = new Position(edge, edge.getLength());
-			Segment s = new Segment(segmentStart, this.segmentLength, this.getEdgeCapacity(edge));
-
-			do {
-				segmentList.offer(s);
-				s = new Segment(s.exclusiveEndLocation, this.segmentLength, this.getEdgeCapacity(edge));
-			} while (!s.contains(segmentEnd));
-
-			s = new Segment(s.startLocation, MINIMUM_DISTANCE_MARGIN, this.getEdgeCapacity(edge));
-			segmentList.offer(s);
-
-			this.edgeSegments.put(edge, segmentList);
-		}
-	}
-
-	/**
-	 * Gets the edge.
-	 * 
-	 * @param from
-	 *            the from
-	 * @param to
-	 *            the to
-	 * @return the edge
-	 */
-	public Edge getEdge(int from, int to) {
-		return new Edge(from, to, getEdgeLength(from, to));
-	}
-
-	/**
-	 * Gets the edge capacity.
-	 * 
-	 * @param edge
-	 *            the edge
-	 * @return the edge capacity
-	 */
-	public int getEdgeCapacity(Edge edge) {
-		return getEdgeCapacity(edge.getFrom(), edge.getTo());
-	}
-
-	/**
-	 * Gets the edge capacity.
-	 * 
-	 * @param nodeIndexA
-	 *            the node index a
-	 * @param nodeIndexB
-	 *            the node index b
-	 * @return the edge capacity
-	 */
-	public int getEdgeCapacity(int nodeIndexA, int nodeIndexB) {
-		return this.capacityMatrix[nodeIndexA][nodeIndexB];
-	}
-
-	/**
-	 * Gets the farthest available segment (occupation-wise).
-	 * 
-	 * @param start
-	 *            the start
-	 * @param limit
-	 *            the limit
-	 * @return the farthest available segment
-	 */
-	public Segment getFarthestAvailableSegment(Segment start, Segment limit) {
-		LinkedList<Segment> segmentsForEdge = this.edgeSegments.get(limit.startLocation.edge);
-		Iterator<Segment> it = segmentsForEdge.descendingIterator();
-
-		Segment currentSeg = it.next();
-		while (!currentSeg.equals(limit))
-			currentSeg = it.next();
-
-		while (currentSeg.isFull() && !currentSeg.equals(start)) {
-			currentSeg = it.next();
-		}
-
-		return currentSeg;
-	}
-
-	/**
-	 * Gets the segment for position.
-	 * 
-	 * @param pos
-	 *            the pos
-	 * @return the segment for position
-	 */
-	public Segment getSegmentForPosition(Position pos) {
-		LinkedList<Segment> segmentsForEdge = this.edgeSegments.get(pos.edge);
-		Iterator<Segment> it = segmentsForEdge.iterator();
-		if (!it.hasNext()) {
-			return null;
-		}
-
-		Segment seg = it.next();
-		while (!seg.contains(pos)) {
-			seg = it.next();
-		}
-
-		return seg;
-	}
-
-	/**
-	 * Gets the segments up to position.
-	 * 
-	 * @param pos
-	 *            the pos
-	 * @return the segments up to position
-	 */
-	public LinkedList<Segment> getSegmentsUpToPosition(Position pos) {
-		LinkedList<Segment> segmentsForEdge = this.edgeSegments.get(pos.edge);
-		Iterator<Segment> it = segmentsForEdge.iterator();
-		if (!it.hasNext()) {
-			return null;
-		}
-
-		LinkedList<Segment> result = new LinkedList<>();
-
-		Segment seg = it.next();
-		while (!seg.contains(pos)) {
-			result.add(seg);
-			seg = it.next();
-		}
-
-		result.add(seg);
-
-		return result;
-	}
-
-	/**
-	 * Gets the segments for edge.
-	 * 
-	 * @param e
-	 *            the e
-	 * @return the segments for edge
-	 */
-	public LinkedList<Segment> getSegmentsForEdge(Edge e) {
-		return this.edgeSegments.get(e);
-	}
-
-	/**
-	 * Checks if edge is full.
-	 * 
-	 * @param e
-	 *            the e
-	 * @return true, if is edge full
-	 */
-	public boolean isEdgeFull(Edge e) {
-		LinkedList<Segment> segmentsForEdge = new LinkedList<>();
-		segmentsForEdge.addAll(getSegmentsForEdge(e));
-
-		segmentsForEdge.removeLast();
-
-		for (Segment s : segmentsForEdge) {
-			if (!s.isFull()) {
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	/**
-	 * Reset and build segments.
-	 */
-	public void resetAndBuildSegments() {
-		if (!this.edgeSegments.isEmpty()) {
-			this.edgeSegments.clear();
-		}
-		buildAllSegments();
-	}
-
-}
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Extension of a TraditionalGraph with all the complex attributes we need to run a flocking algorithm on top of it.
+ * 
+ * @author Balthazar. Created Jan 25, 2013.
+ */
+public class FlockingGraph extends TraditionalGraph {
+
+	/** The Constant MINIMUM_DISTANCE_MARGIN. */
+	public static final double MINIMUM_DISTANCE_MARGIN = 0.01d;
+
+	/** The Constant DEFAULT_SEGMENT_LENGTH. */
+	public static final int DEFAULT_SEGMENT_LENGTH = 1;
+
+	/** The Constant DEFAULT_SEGMENT_CAPACITY. */
+	public static final int DEFAULT_SEGMENT_CAPACITY = 3;
+
+	/**
+	 * Above this many edges, segment occupancies are kept in a map instead of an array indexed by edge, and so are the
+	 * other things kept per edge of the graph.
+	 */
+	public static final int MAX_INDEXED_EDGES = 1 << 22;
+
+	/** The number of locks guarding the segments while boids move concurrently. Edges share them by index. */
+	static final int EDGE_LOCK_STRIPES = 1 << 12;
+
+	/** The segment length. */
+	double segmentLength;
+
+	/** The segment capacity, the same for all edges. */
+	int segmentCapacity;
+
+	/**
+	 * The segment occupancies, indexed by edge id and then by segment index along the edge. Edges are only
+	 * materialized when a boid first lands on them. Each array ends with a two-level bitset of the full segments (see
+	 * {@link #setFull(int[], int, int, boolean)}), to find free segments without checking them one by one.
+	 */
+	int[][] segmentOccupancy;
+
+	/**
+	 * The segment occupancies of graphs with too many edges to index them all (e.g. large complete graphs with computed
+	 * edge lengths), by edge index. Null otherwise.
+	 */
+	ConcurrentHashMap<Integer, int[]> sparseSegmentOccupancy;
+
+	/** The number of edges of the graph when the segment storage was created. */
+	int storedNumberOfEdges;
+
+	/** The edges of a graph with derived edge ids, created on first use and indexed by edge id. */
+	Edge[] computedEdges;
+
+	/** The indexes of the edges materialized since the last reset. */
+	int[] materializedEdges;
+
+	/** The number of edges materialized since the last reset. */
+	int materializedEdgeCount;
+
+	/**
+	 * Whether both directions of an edge share the same segments, so opposing traffic contends for the same space.
+	 */
+	boolean sharedDirections;
+
+	/** The locks guarding the segments of the edges, by edge index modulo their number. Created on first use. */
+	Lock[] edgeLocks;
+
+	/** Whether boids may be changing segment occupancies from several threads. */
+	boolean concurrentMoves;
+
+	/**
+	 * Constructor of a graph for our flocking problem.
+	 * 
+	 * @param numberOfNodes
+	 *            the number of nodes
+	 * @param segmentLenght
+	 *            - The length of each segment in the graph
+	 * @param segmentCapacity
+	 *            - The maximum number of agents that fit inside one segment
+	 */
+	public FlockingGraph(int numberOfNodes, double segmentLenght, int segmentCapacity) {
+		super(numberOfNodes);
+		initSegments(segmentLenght, segmentCapacity);
+	}
+
+	/**
+	 * Instantiates a new flocking graph.
+	 * 
+	 * @param tGraph
+	 *            the t graph
+	 */
+	public FlockingGraph(TraditionalGraph tGraph) {
+		this(tGraph, DEFAULT_SEGMENT_LENGTH, DEFAULT_SEGMENT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new flocking graph. The edges are shared with the given graph, not copied.
+	 * 
+	 * @param tGraph
+	 *            the t graph
+	 * @param segmentLenght
+	 *            the segment lenght
+	 * @param segmentCapacity
+	 *            the segment capacity
+	 */
+	public FlockingGraph(TraditionalGraph tGraph, double segmentLenght, int segmentCapacity) {
+		super(tGraph);
+		initSegments(segmentLenght, segmentCapacity);
+	}
+
+	/**
+	 * Instantiates a new flocking graph.
+	 * 
+	 * @param tGraph
+	 *            the t graph
+	 * @param segmentLenght
+	 *            the segment lenght
+	 * @param segmentCapacity
+	 *            the segment capacity
+	 * @param sharedDirections
+	 *            whether both directions of an edge share the same segments. Only meaningful for symmetric graphs.
+	 */
+	public FlockingGraph(TraditionalGraph tGraph, double segmentLenght, int segmentCapacity, boolean sharedDirections) {
+		this(tGraph, segmentLenght, segmentCapacity);
+		this.sharedDirections = sharedDirections;
+	}
+
+	/**
+	 * Sets up the (still empty) segment storage.
+	 * 
+	 * @param segmentLenght
+	 *            the segment lenght
+	 * @param segmentCapacity
+	 *            the segment capacity
+	 */
+	private void initSegments(double segmentLenght, int segmentCapacity) {
+		this.segmentLength = segmentLenght;
+		this.segmentCapacity = segmentCapacity;
+		this.segmentOccupancy = new int[0][];
+		this.storedNumberOfEdges = 0;
+		this.materializedEdges = new int[this.numberOfNodes];
+		this.materializedEdgeCount = 0;
+	}
+
+	/**
+	 * Builds the all segments eagerly. Not needed for running a problem, since segments are built on first touch.
+	 */
+	public void buildAllSegments() {
+		for (int id = 0; id < getNumberOfEdges(); id++) {
+			buildSegmentsFor(getEdgeById(id));
+		}
+	}
+
+	/**
+	 * Builds the segments for an edge. Every segment has the same length, except for the last one, which is a small
+	 * stub at the end of the edge where boids wait before crossing to the next edge. Only the occupancy of each
+	 * segment is stored, {@link Segment} objects are created on demand.
+	 * 
+	 * @param edge
+	 *            the edge
+	 */
+	public void buildSegmentsFor(Edge edge) {
+		materialize(edge);
+	}
+
+	/**
+	 * Gets the edge capacity.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the edge capacity
+	 */
+	public int getEdgeCapacity(Edge edge) {
+		return getEdgeCapacity(edge.getFrom(), edge.getTo());
+	}
+
+	/**
+	 * Gets the edge capacity.
+	 * 
+	 * @param nodeIndexA
+	 *            the node index a
+	 * @param nodeIndexB
+	 *            the node index b
+	 * @return the edge capacity
+	 */
+	public int getEdgeCapacity(int nodeIndexA, int nodeIndexB) {
+		return this.segmentCapacity;
+	}
+
+	/**
+	 * Gets the farthest available segment (occupation-wise).
+	 * 
+	 * @param start
+	 *            the start
+	 * @param limit
+	 *            the limit
+	 * @return the farthest available segment
+	 */
+	public Segment getFarthestAvailableSegment(Segment start, Segment limit) {
+		Edge edge = limit.startLocation.edge;
+		int index = getFarthestAvailableSegmentIndex(edge, start.index, limit.index);
+		return index == limit.index ? limit : createSegment(edge, index);
+	}
+
+	/**
+	 * Gets the index of the farthest available segment (occupation-wise) of an edge, between two segments. If every
+	 * segment after the start is full, the start is returned.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param startIndex
+	 *            the index of the start segment
+	 * @param limitIndex
+	 *            the index of the limit segment
+	 * @return the index of the farthest available segment
+	 */
+	public int getFarthestAvailableSegmentIndex(Edge edge, int startIndex, int limitIndex) {
+		if (!this.concurrentMoves) {
+			return findFarthestAvailableSegmentIndex(edge, startIndex, limitIndex);
+		}
+		Lock lock = getLock(edge);
+		lock.lock();
+		try {
+			return findFarthestAvailableSegmentIndex(edge, startIndex, limitIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets whether boids may change segment occupancies from several threads at once. While set, every occupancy
+	 * access locks the edge (edges share a fixed number of locks), and the graph is read as with
+	 * {@link #setConcurrentReads(boolean)}. Otherwise, the occupancies are accessed without locking. Unsetting it also
+	 * ends the concurrent reads.
+	 * 
+	 * @param concurrentMoves
+	 *            whether boids move concurrently
+	 */
+	public void setConcurrentMoves(boolean concurrentMoves) {
+		setConcurrentReads(concurrentMoves);
+		if (concurrentMoves) {
+			if (this.edgeLocks == null) {
+				this.edgeLocks = new Lock[EDGE_LOCK_STRIPES];
+				for (int i = 0; i < EDGE_LOCK_STRIPES; i++) {
+					this.edgeLocks[i] = new ReentrantLock();
+				}
+			}
+		}
+		this.concurrentMoves = concurrentMoves;
+	}
+
+	/**
+	 * Sets whether several threads may read the graph (and look up its edges) at the same time, as long as no
+	 * occupancy changes meanwhile unless {@link #setConcurrentMoves(boolean)} is set too. While set, the graph only
+	 * reads what it built before: the occupancy arrays and the candidate lists are built up front, edge lengths are
+	 * computed without the caches of the graph they come from (e.g. the row cache of an {@link EuclideanGraph}), and
+	 * the edges not created yet are created on every lookup instead of being kept.
+	 * 
+	 * @param concurrentReads
+	 *            whether the graph is read concurrently
+	 */
+	public void setConcurrentReads(boolean concurrentReads) {
+		if (concurrentReads) {
+			if (this.storedNumberOfEdges != getNumberOfEdges()) {
+				resetSegments();
+			}
+			buildCandidateLists();
+			if (hasDerivedEdgeIds() && getNumberOfEdges() <= MAX_INDEXED_EDGES
+					&& (this.computedEdges == null || this.computedEdges.length != getNumberOfEdges())) {
+				this.computedEdges = new Edge[getNumberOfEdges()];
+			}
+		}
+		this.concurrentReads = concurrentReads;
+	}
+
+	/**
+	 * Finds the index of the farthest available segment of an edge, without locking it.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param startIndex
+	 *            the index of the start segment
+	 * @param limitIndex
+	 *            the index of the limit segment
+	 * @return the index of the farthest available segment
+	 */
+	private int findFarthestAvailableSegmentIndex(Edge edge, int startIndex, int limitIndex) {
+		int[] occupancy = getOccupancyArray(edge);
+		if (occupancy == null) {
+			// nobody has been here yet, everything is available
+			return limitIndex;
+		}
+
+		int lastIndex = getLastSegmentIndex(edge);
+		int slots = getSlotCount(lastIndex);
+		int index = startIndex;
+		if (!this.sharedDirections || edge.getFrom() < edge.getTo()) {
+			int slot = findNonFullSlotBelow(occupancy, slots, startIndex + 1, limitIndex);
+			if (slot >= 0) {
+				index = slot;
+			}
+		} else if (limitIndex > startIndex) {
+			// the reverse direction is stored backwards, apart from its stub
+			if (limitIndex == lastIndex && !isFull(occupancy, slots, lastIndex + 1)) {
+				index = lastIndex;
+			} else {
+				int top = Math.min(limitIndex, lastIndex - 1);
+				if (top > startIndex) {
+					int slot = findNonFullSlotAbove(occupancy, slots, lastIndex - 1 - top, lastIndex - 2 - startIndex);
+					if (slot >= 0) {
+						index = lastIndex - 1 - slot;
+					}
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the edge between two nodes. With derived edge ids (e.g. computed edge lengths), each edge is created only
+	 * once, so agents can look edges up while moving without allocating. While the graph is read concurrently, the
+	 * edges created before are only read, and the others are created on every lookup.
+	 * 
+	 * @param from
+	 *            the from node
+	 * @param to
+	 *            the to node
+	 * @return the edge
+	 */
+	@Override
+	public Edge getEdge(int from, int to) {
+		if (!hasDerivedEdgeIds() || getNumberOfEdges() > MAX_INDEXED_EDGES) {
+			return super.getEdge(from, to);
+		}
+
+		int id = getEdgeId(from, to);
+		if (id == INVALID_VALUE) {
+			return super.getEdge(from, to);
+		}
+		if (this.concurrentReads) {
+			// kept only while one thread reads, before the other threads were started
+			Edge edge = this.computedEdges[id];
+			return edge != null ? edge : super.getEdge(from, to);
+		}
+		if (this.computedEdges == null || this.computedEdges.length != getNumberOfEdges()) {
+			this.computedEdges = new Edge[getNumberOfEdges()];
+		}
+		Edge edge = this.computedEdges[id];
+		if (edge == null) {
+			edge = super.getEdge(from, to);
+			this.computedEdges[id] = edge;
+		}
+		return edge;
+	}
+
+	/**
+	 * Gets the number of edges that had their segments materialized since the last reset.
+	 * 
+	 * @return the materialized edge count
+	 */
+	public int getMaterializedEdgeCount() {
+		return this.materializedEdgeCount;
+	}
+
+	/**
+	 * Gets the current occupancy of a segment.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return the occupancy
+	 */
+	public int getOccupancy(Edge edge, int segmentIndex) {
+		if (!this.concurrentMoves) {
+			return readOccupancy(edge, segmentIndex);
+		}
+		Lock lock = getLock(edge);
+		lock.lock();
+		try {
+			return readOccupancy(edge, segmentIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the current occupancy of a segment, without locking its edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return the occupancy
+	 */
+	private int readOccupancy(Edge edge, int segmentIndex) {
+		int[] occupancy = getOccupancyArray(edge);
+		return occupancy == null ? 0 : occupancy[getStorageSlot(edge, segmentIndex, getLastSegmentIndex(edge))];
+	}
+
+	/**
+	 * Increments the occupancy of a segment, materializing the edge segments if needed.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 */
+	public void incrementOccupancy(Edge edge, int segmentIndex) {
+		if (!tryIncrementOccupancy(edge, segmentIndex)) {
+			System.out.println("Max segment occupancy exceeded.");
+			throw new RuntimeException("Max segment occupancy exceeded.");
+		}
+	}
+
+	/**
+	 * Increments the occupancy of a segment if it has space left, materializing the edge segments if needed. Boids
+	 * moving concurrently can't take the space between the check and the increment.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return true, if the occupancy was incremented
+	 */
+	public boolean tryIncrementOccupancy(Edge edge, int segmentIndex) {
+		if (!this.concurrentMoves) {
+			return addOccupant(edge, segmentIndex);
+		}
+		Lock lock = getLock(edge);
+		lock.lock();
+		try {
+			return addOccupant(edge, segmentIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Increments the occupancy of a segment if it has space left, without locking its edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return true, if the occupancy was incremented
+	 */
+	private boolean addOccupant(Edge edge, int segmentIndex) {
+		int[] occupancy = materialize(edge);
+		int slot = getStorageSlot(edge, segmentIndex, getLastSegmentIndex(edge));
+		int capacity = getEdgeCapacity(edge);
+		if (occupancy[slot] >= capacity) {
+			return false;
+		}
+		occupancy[slot]++;
+		if (occupancy[slot] >= capacity) {
+			setFull(occupancy, getSlotCount(getLastSegmentIndex(edge)), slot, true);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves one occupant from a segment to another, if the second one has space left. The space is taken before the
+	 * first segment is left, so boids moving concurrently never overfill a segment, and no edge is locked while
+	 * holding the lock of another.
+	 * 
+	 * @param fromEdge
+	 *            the edge of the segment left
+	 * @param fromSegmentIndex
+	 *            the index of the segment left
+	 * @param toEdge
+	 *            the edge of the segment entered
+	 * @param toSegmentIndex
+	 *            the index of the segment entered
+	 * @return true, if moved (or both are the same segment), false if the segment entered was full
+	 */
+	public boolean moveOccupancy(Edge fromEdge, int fromSegmentIndex, Edge toEdge, int toSegmentIndex) {
+		if (isSameSegment(fromEdge, fromSegmentIndex, toEdge, toSegmentIndex)) {
+			return true;
+		}
+		if (!tryIncrementOccupancy(toEdge, toSegmentIndex)) {
+			return false;
+		}
+		decrementOccupancy(fromEdge, fromSegmentIndex);
+		return true;
+	}
+
+	/**
+	 * Checks if two segments are the same space, which happens for different edges when directions are shared.
+	 * 
+	 * @param edgeA
+	 *            the edge of the first segment
+	 * @param segmentIndexA
+	 *            the index of the first segment
+	 * @param edgeB
+	 *            the edge of the second segment
+	 * @param segmentIndexB
+	 *            the index of the second segment
+	 * @return true, if both share their occupancy
+	 */
+	public boolean isSameSegment(Edge edgeA, int segmentIndexA, Edge edgeB, int segmentIndexB) {
+		return getEdgeIndex(edgeA) == getEdgeIndex(edgeB)
+				&& getStorageSlot(edgeA, segmentIndexA, getLastSegmentIndex(edgeA)) == getStorageSlot(edgeB,
+						segmentIndexB, getLastSegmentIndex(edgeB));
+	}
+
+	/**
+	 * Decrements the occupancy of a segment.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 */
+	public void decrementOccupancy(Edge edge, int segmentIndex) {
+		if (!this.concurrentMoves) {
+			removeOccupant(edge, segmentIndex);
+			return;
+		}
+		Lock lock = getLock(edge);
+		lock.lock();
+		try {
+			removeOccupant(edge, segmentIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Decrements the occupancy of a segment, without locking its edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 */
+	private void removeOccupant(Edge edge, int segmentIndex) {
+		int[] occupancy = materialize(edge);
+		int slot = getStorageSlot(edge, segmentIndex, getLastSegmentIndex(edge));
+		if (occupancy[slot] <= 0) {
+			System.out.println("Negative segment occupancy.");
+		}
+		occupancy[slot]--;
+		if (occupancy[slot] < getEdgeCapacity(edge)) {
+			setFull(occupancy, getSlotCount(getLastSegmentIndex(edge)), slot, false);
+		}
+	}
+
+	/**
+	 * Checks if a segment is full.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return true, if the segment has no space left
+	 */
+	public boolean isSegmentFull(Edge edge, int segmentIndex) {
+		if (!this.concurrentMoves) {
+			return checkFull(edge, segmentIndex);
+		}
+		Lock lock = getLock(edge);
+		lock.lock();
+		try {
+			return checkFull(edge, segmentIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks if a segment is full, without locking its edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return true, if the segment has no space left
+	 */
+	private boolean checkFull(Edge edge, int segmentIndex) {
+		int[] occupancy = getOccupancyArray(edge);
+		if (occupancy == null) {
+			return getEdgeCapacity(edge) <= 0;
+		}
+		int lastIndex = getLastSegmentIndex(edge);
+		return isFull(occupancy, getSlotCount(lastIndex), getStorageSlot(edge, segmentIndex, lastIndex));
+	}
+
+	/**
+	 * Gets the distance from the start of the edge where a segment ends (exclusive).
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index
+	 * @return the end of the segment
+	 */
+	public double getSegmentEnd(Edge edge, int segmentIndex) {
+		double start = segmentIndex * this.segmentLength;
+		return start + (segmentIndex == getLastSegmentIndex(edge) ? MINIMUM_DISTANCE_MARGIN : this.segmentLength);
+	}
+
+	/**
+	 * Gets the segment for position.
+	 * 
+	 * @param pos
+	 *            the pos
+	 * @return the segment for position
+	 */
+	public Segment getSegmentForPosition(Position pos) {
+		return createSegment(pos.edge, getSegmentIndexForPosition(pos));
+	}
+
+	/**
+	 * Gets the index of the segment that contains a position, computed from its distance to the start of the edge.
+	 * 
+	 * @param pos
+	 *            the pos
+	 * @return the segment index
+	 */
+	public int getSegmentIndexForPosition(Position pos) {
+		return getSegmentIndex(pos.distanceFromStart, getLastSegmentIndex(pos.edge));
+	}
+
+	/**
+	 * Gets the index of the segment of an edge that contains the given distance from its start.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param distanceFromStart
+	 *            the distance from the start of the edge
+	 * @return the segment index
+	 */
+	public int getSegmentIndexForDistance(Edge edge, double distanceFromStart) {
+		return getSegmentIndex(distanceFromStart, getLastSegmentIndex(edge));
+	}
+
+	/**
+	 * Gets the segments up to position.
+	 * 
+	 * @param pos
+	 *            the pos
+	 * @return the segments up to position
+	 */
+	public LinkedList<Segment> getSegmentsUpToPosition(Position pos) {
+		int lastIndex = getSegmentIndexForPosition(pos);
+
+		LinkedList<Segment> result = new LinkedList<>();
+		for (int i = 0; i <= lastIndex; i++) {
+			result.add(createSegment(pos.edge, i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the segments for edge.
+	 * 
+	 * @param e
+	 *            the e
+	 * @return the segments for edge
+	 */
+	public List<Segment> getSegmentsForEdge(Edge e) {
+		int lastIndex = getLastSegmentIndex(e);
+
+		List<Segment> result = new ArrayList<>(lastIndex + 1);
+		for (int i = 0; i <= lastIndex; i++) {
+			result.add(createSegment(e, i));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checks if edge is full.
+	 * 
+	 * @param e
+	 *            the e
+	 * @return true, if is edge full
+	 */
+	public boolean isEdgeFull(Edge e) {
+		int[] occupancy = getOccupancyArray(e);
+		int capacity = getEdgeCapacity(e);
+		if (occupancy == null) {
+			return capacity <= 0;
+		}
+
+		// the last segment is only the waiting stub at the end of the edge, the others take the first slots
+		int lastIndex = getLastSegmentIndex(e);
+		return findNonFullSlotAbove(occupancy, getSlotCount(lastIndex), 0, lastIndex - 1) < 0;
+	}
+
+	/**
+	 * Reset and build segments eagerly.
+	 */
+	public void resetAndBuildSegments() {
+		resetSegments();
+		buildAllSegments();
+	}
+
+	/**
+	 * Reset segments, dropping every edge materialized until now. They will be built again on first touch.
+	 */
+	public void resetSegments() {
+		if (this.sparseSegmentOccupancy != null) {
+			this.sparseSegmentOccupancy.clear();
+		} else {
+			for (int i = 0; i < this.materializedEdgeCount; i++) {
+				this.segmentOccupancy[this.materializedEdges[i]] = null;
+			}
+		}
+		this.materializedEdgeCount = 0;
+
+		if (this.storedNumberOfEdges != getNumberOfEdges()) {
+			// the edges changed since the storage was created
+			this.storedNumberOfEdges = getNumberOfEdges();
+			if (this.storedNumberOfEdges > MAX_INDEXED_EDGES) {
+				this.segmentOccupancy = new int[0][];
+				this.sparseSegmentOccupancy = new ConcurrentHashMap<Integer, int[]>();
+			} else {
+				this.segmentOccupancy = new int[this.storedNumberOfEdges][];
+				this.sparseSegmentOccupancy = null;
+			}
+		}
+	}
+
+	/**
+	 * Creates the segment view for the given index of an edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param index
+	 *            the segment index
+	 * @return the segment
+	 */
+	Segment createSegment(Edge edge, int index) {
+		double length = index == getLastSegmentIndex(edge) ? MINIMUM_DISTANCE_MARGIN : this.segmentLength;
+		return new Segment(this, new Position(edge, index * this.segmentLength), length, getEdgeCapacity(edge), index);
+	}
+
+	/**
+	 * Materializes the segments of an edge, if not done yet.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the occupancy array of the edge
+	 */
+	int[] materialize(Edge edge) {
+		if (this.storedNumberOfEdges != getNumberOfEdges()) {
+			resetSegments();
+		}
+
+		int edgeIndex = getEdgeIndex(edge);
+		int[] occupancy = getOccupancyArray(edge);
+		if (occupancy == null) { // segments not yet created
+			occupancy = createOccupancyArray(getSlotCount(getLastSegmentIndex(edge)));
+			if (this.sparseSegmentOccupancy != null) {
+				this.sparseSegmentOccupancy.put(edgeIndex, occupancy);
+			} else {
+				this.segmentOccupancy[edgeIndex] = occupancy;
+			}
+
+			synchronized (this) {
+				if (this.materializedEdgeCount == this.materializedEdges.length) {
+					this.materializedEdges = Arrays.copyOf(this.materializedEdges, this.materializedEdgeCount * 2 + 1);
+				}
+				this.materializedEdges[this.materializedEdgeCount++] = edgeIndex;
+			}
+		}
+		return occupancy;
+	}
+
+	/**
+	 * Creates an empty occupancy array, followed by its bitset of full segments. Bits past the last slot are kept set,
+	 * so they never look free.
+	 * 
+	 * @param slots
+	 *            the number of slots
+	 * @return the occupancy array
+	 */
+	int[] createOccupancyArray(int slots) {
+		int words = (slots + 31) >>> 5;
+		int summaryWords = (words + 31) >>> 5;
+		int[] occupancy = new int[slots + words + summaryWords];
+
+		int firstFullSlot = this.segmentCapacity <= 0 ? 0 : slots;
+		for (int slot = firstFullSlot; slot < words << 5; slot++) {
+			setFull(occupancy, slots, slot, true);
+		}
+		for (int word = words; word < summaryWords << 5; word++) {
+			occupancy[slots + words + (word >>> 5)] |= 1 << word;
+		}
+		return occupancy;
+	}
+
+	/**
+	 * Marks a slot as full or not. The bitset after the slots has one bit per slot, and is followed by a summary with
+	 * one bit per bitset word, set when the whole word is full.
+	 * 
+	 * @param occupancy
+	 *            the occupancy array
+	 * @param slots
+	 *            the number of slots
+	 * @param slot
+	 *            the slot
+	 * @param full
+	 *            whether the slot is full
+	 */
+	static void setFull(int[] occupancy, int slots, int slot, boolean full) {
+		int word = slot >>> 5;
+		if (full) {
+			occupancy[slots + word] |= 1 << slot;
+		} else {
+			occupancy[slots + word] &= ~(1 << slot);
+		}
+
+		int summary = slots + ((slots + 31) >>> 5) + (word >>> 5);
+		if (occupancy[slots + word] == -1) {
+			occupancy[summary] |= 1 << word;
+		} else {
+			occupancy[summary] &= ~(1 << word);
+		}
+	}
+
+	/**
+	 * Checks if a slot is marked as full.
+	 * 
+	 * @param occupancy
+	 *            the occupancy array
+	 * @param slots
+	 *            the number of slots
+	 * @param slot
+	 *            the slot
+	 * @return true, if full
+	 */
+	static boolean isFull(int[] occupancy, int slots, int slot) {
+		return (occupancy[slots + (slot >>> 5)] & (1 << slot)) != 0;
+	}
+
+	/**
+	 * Finds the highest slot in a range that is not full.
+	 * 
+	 * @param occupancy
+	 *            the occupancy array
+	 * @param slots
+	 *            the number of slots
+	 * @param from
+	 *            the lowest slot of the range
+	 * @param to
+	 *            the highest slot of the range
+	 * @return the slot, or -1 if all of them are full
+	 */
+	static int findNonFullSlotBelow(int[] occupancy, int slots, int from, int to) {
+		if (to < from) {
+			return -1;
+		}
+
+		int word = to >>> 5;
+		int free = ~occupancy[slots + word] & (-1 >>> (31 - (to & 31)));
+		if (free == 0) {
+			// look for the previous word with a free slot in the summary
+			int summaryStart = slots + ((slots + 31) >>> 5);
+			word--;
+			if (word < 0) {
+				return -1;
+			}
+			int summaryWord = word >>> 5;
+			int freeWords = ~occupancy[summaryStart + summaryWord] & (-1 >>> (31 - (word & 31)));
+			while (freeWords == 0) {
+				if (--summaryWord < 0) {
+					return -1;
+				}
+				freeWords = ~occupancy[summaryStart + summaryWord];
+			}
+			word = (summaryWord << 5) + 31 - Integer.numberOfLeadingZeros(freeWords);
+			free = ~occupancy[slots + word];
+		}
+
+		int slot = (word << 5) + 31 - Integer.numberOfLeadingZeros(free);
+		return slot >= from ? slot : -1;
+	}
+
+	/**
+	 * Finds the lowest slot in a range that is not full.
+	 * 
+	 * @param occupancy
+	 *            the occupancy array
+	 * @param slots
+	 *            the number of slots
+	 * @param from
+	 *            the lowest slot of the range
+	 * @param to
+	 *            the highest slot of the range
+	 * @return the slot, or -1 if all of them are full
+	 */
+	static int findNonFullSlotAbove(int[] occupancy, int slots, int from, int to) {
+		if (to < from) {
+			return -1;
+		}
+
+		int words = (slots + 31) >>> 5;
+		int word = from >>> 5;
+		int free = ~occupancy[slots + word] & (-1 << from);
+		if (free == 0) {
+			// look for the next word with a free slot in the summary
+			int summaryStart = slots + words;
+			int summaryWords = (words + 31) >>> 5;
+			word++;
+			if (word >= words) {
+				return -1;
+			}
+			int summaryWord = word >>> 5;
+			int freeWords = ~occupancy[summaryStart + summaryWord] & (-1 << word);
+			while (freeWords == 0) {
+				if (++summaryWord >= summaryWords) {
+					return -1;
+				}
+				freeWords = ~occupancy[summaryStart + summaryWord];
+			}
+			word = (summaryWord << 5) + Integer.numberOfTrailingZeros(freeWords);
+			free = ~occupancy[slots + word];
+		}
+
+		int slot = (word << 5) + Integer.numberOfTrailingZeros(free);
+		return slot <= to ? slot : -1;
+	}
+
+	/**
+	 * Gets the occupancy array of an edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the occupancy array, or null if the edge was not materialized
+	 */
+	int[] getOccupancyArray(Edge edge) {
+		int edgeIndex = getEdgeIndex(edge);
+		if (this.sparseSegmentOccupancy != null) {
+			return this.sparseSegmentOccupancy.get(edgeIndex);
+		}
+		return edgeIndex < this.segmentOccupancy.length ? this.segmentOccupancy[edgeIndex] : null;
+	}
+
+	/**
+	 * Gets the index of an edge in the segment storage, which is its id. When directions are shared, both directions of
+	 * an edge have the index of the one leaving the lowest node.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the edge index
+	 */
+	int getEdgeIndex(Edge edge) {
+		if (this.sharedDirections && edge.getFrom() > edge.getTo()) {
+			int reverseId = getReverseEdgeId(edge.getId());
+			if (reverseId != INVALID_VALUE) {
+				return reverseId;
+			}
+		}
+		return edge.getId();
+	}
+
+	/**
+	 * Gets the lock guarding the segments of an edge while boids move concurrently.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the lock
+	 */
+	Lock getLock(Edge edge) {
+		return this.edgeLocks[getEdgeIndex(edge) & (EDGE_LOCK_STRIPES - 1)];
+	}
+
+	/**
+	 * Gets the slot of the occupancy array of an edge where a segment is stored. When directions are shared, edges are
+	 * stored in the direction of their lowest node, the reverse direction is indexed from the far end and its waiting
+	 * stub is kept in an extra slot after the forward one.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param segmentIndex
+	 *            the segment index along the edge direction
+	 * @param lastIndex
+	 *            the index of the last segment of the edge
+	 * @return the storage slot
+	 */
+	int getStorageSlot(Edge edge, int segmentIndex, int lastIndex) {
+		if (!this.sharedDirections || edge.getFrom() < edge.getTo()) {
+			return segmentIndex;
+		}
+		return segmentIndex == lastIndex ? lastIndex + 1 : lastIndex - 1 - segmentIndex;
+	}
+
+	/**
+	 * Gets the number of occupancy slots of an edge. Shared edges keep one waiting stub for each direction.
+	 * 
+	 * @param lastIndex
+	 *            the index of the last segment of the edge
+	 * @return the slot count
+	 */
+	int getSlotCount(int lastIndex) {
+		return lastIndex + (this.sharedDirections ? 2 : 1);
+	}
+
+	/**
+	 * Gets the index of the last segment (the stub at the end) of an edge.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @return the last segment index
+	 */
+	int getLastSegmentIndex(Edge edge) {
+		return Math.max(1, (int) (edge.getLength() / this.segmentLength));
+	}
+
+	/**
+	 * Gets the index of the segment that contains the given distance from the start of the edge.
+	 * 
+	 * @param distanceFromStart
+	 *            the distance from start
+	 * @param lastIndex
+	 *            the index of the last segment of the edge
+	 * @return the segment index
+	 */
+	int getSegmentIndex(double distanceFromStart, int lastIndex) {
+		int index = (int) (distanceFromStart / this.segmentLength);
+		if (index > lastIndex) {
+			// anything beyond the last full segment is waiting in the stub
+			return lastIndex;
+		}
+		return index < 0 ? 0 : index;
+	}
+
+}
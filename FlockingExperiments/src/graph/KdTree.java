@@ -0,0 +1,352 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A 2-d tree over city coordinates, to answer nearest neighbor and radius queries without computing every pairwise
+ * distance. Building it takes O(n log n). Queries keep their state in the tree, so it must not be queried from
+ * several threads at once.
+ */
+public class KdTree {
+
+	/** The coordinates of each city. */
+	private final double[][] coords;
+
+	/** The cities, arranged so that each subtree is a range whose middle city splits the rest. */
+	private final int[] cities;
+
+	/** The axis (0 for x, 1 for y) each subtree is split on, indexed by the position of its middle city. */
+	private final byte[] axes;
+
+	/** The distances in the current nearest neighbors query, kept as a max-heap. */
+	private double[] heapDistances;
+
+	/** The cities in the current nearest neighbors query, in the same heap order. */
+	private int[] heapCities;
+
+	/** The number of cities found so far in the current nearest neighbors query. */
+	private int heapSize;
+
+	/** The cities found so far in the current radius query. */
+	private int[] foundCities;
+
+	/** The number of cities found so far in the current radius query. */
+	private int foundCount;
+
+	/**
+	 * Builds the tree.
+	 *
+	 * @param coords
+	 *            the coordinates of each city
+	 */
+	public KdTree(double[][] coords) {
+		this.coords = coords;
+		this.cities = new int[coords.length];
+		for (int i = 0; i < this.cities.length; i++) {
+			this.cities[i] = i;
+		}
+		this.axes = new byte[coords.length];
+		build(0, this.cities.length);
+	}
+
+	/**
+	 * Finds the nearest cities to the given one, closest first. Ties are broken by city index.
+	 *
+	 * @param city
+	 *            the city
+	 * @param k
+	 *            how many cities to find
+	 * @return the k nearest cities, not including the city itself
+	 */
+	public int[] getNearest(int city, int k) {
+		k = Math.min(k, this.cities.length - 1);
+		if (k <= 0) {
+			return new int[0];
+		}
+
+		this.heapDistances = new double[k];
+		this.heapCities = new int[k];
+		this.heapSize = 0;
+		searchNearest(0, this.cities.length, city, k);
+
+		// empty the heap, farthest first
+		int[] nearest = new int[this.heapSize];
+		for (int i = nearest.length - 1; i >= 0; i--) {
+			nearest[i] = this.heapCities[0];
+			this.heapSize--;
+			siftDown(this.heapDistances[this.heapSize], this.heapCities[this.heapSize]);
+		}
+		this.heapDistances = null;
+		this.heapCities = null;
+		return nearest;
+	}
+
+	/**
+	 * Finds all cities within a distance of the given one.
+	 *
+	 * @param city
+	 *            the city
+	 * @param radius
+	 *            the radius
+	 * @return the cities within the radius, not including the city itself, in increasing index order
+	 */
+	public int[] getWithinRadius(int city, double radius) {
+		this.foundCities = new int[16];
+		this.foundCount = 0;
+		searchRadius(0, this.cities.length, city, radius * radius);
+
+		int[] found = Arrays.copyOf(this.foundCities, this.foundCount);
+		Arrays.sort(found);
+		this.foundCities = null;
+		return found;
+	}
+
+	/**
+	 * Builds the subtree over a range of cities.
+	 *
+	 * @param lo
+	 *            the start of the range
+	 * @param hi
+	 *            the end of the range (exclusive)
+	 */
+	private void build(int lo, int hi) {
+		if (hi - lo <= 0) {
+			return;
+		}
+
+		// split on the axis with the largest spread
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = lo; i < hi; i++) {
+			double[] c = this.coords[this.cities[i]];
+			minX = Math.min(minX, c[0]);
+			maxX = Math.max(maxX, c[0]);
+			minY = Math.min(minY, c[1]);
+			maxY = Math.max(maxY, c[1]);
+		}
+		int axis = maxX - minX >= maxY - minY ? 0 : 1;
+
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, axis);
+		this.axes[mid] = (byte) axis;
+
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	/**
+	 * Partially sorts a range of cities by one coordinate, so the given position holds the city that would be there if
+	 * fully sorted, with smaller coordinates before it and larger ones after it.
+	 *
+	 * @param lo
+	 *            the start of the range
+	 * @param hi
+	 *            the end of the range (inclusive)
+	 * @param target
+	 *            the position to fill
+	 * @param axis
+	 *            the coordinate to sort by
+	 */
+	private void select(int lo, int hi, int target, int axis) {
+		while (hi > lo) {
+			double pivot = this.coords[this.cities[(lo + hi) >>> 1]][axis];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (this.coords[this.cities[i]][axis] < pivot) {
+					i++;
+				}
+				while (this.coords[this.cities[j]][axis] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int temp = this.cities[i];
+					this.cities[i] = this.cities[j];
+					this.cities[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			if (target <= j) {
+				hi = j;
+			} else if (target >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Searches a subtree for cities nearer than the farthest one found so far.
+	 *
+	 * @param lo
+	 *            the start of the subtree range
+	 * @param hi
+	 *            the end of the subtree range (exclusive)
+	 * @param city
+	 *            the city being queried
+	 * @param k
+	 *            how many cities to find
+	 */
+	private void searchNearest(int lo, int hi, int city, int k) {
+		if (hi - lo <= 0) {
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		int other = this.cities[mid];
+		if (other != city) {
+			double distance = squaredDistance(city, other);
+			if (this.heapSize < k) {
+				this.heapSize++;
+				siftUp(this.heapSize - 1, distance, other);
+			} else if (isFarther(this.heapDistances[0], this.heapCities[0], distance, other)) {
+				siftDown(distance, other);
+			}
+		}
+
+		int axis = this.axes[mid];
+		double difference = this.coords[city][axis] - this.coords[other][axis];
+		boolean lowerFirst = difference < 0;
+		if (lowerFirst) {
+			searchNearest(lo, mid, city, k);
+		} else {
+			searchNearest(mid + 1, hi, city, k);
+		}
+
+		// the other side can only help if it is closer than the farthest city found
+		if (this.heapSize < k || difference * difference <= this.heapDistances[0]) {
+			if (lowerFirst) {
+				searchNearest(mid + 1, hi, city, k);
+			} else {
+				searchNearest(lo, mid, city, k);
+			}
+		}
+	}
+
+	/**
+	 * Searches a subtree for cities within a radius.
+	 *
+	 * @param lo
+	 *            the start of the subtree range
+	 * @param hi
+	 *            the end of the subtree range (exclusive)
+	 * @param city
+	 *            the city being queried
+	 * @param squaredRadius
+	 *            the squared radius
+	 */
+	private void searchRadius(int lo, int hi, int city, double squaredRadius) {
+		if (hi - lo <= 0) {
+			return;
+		}
+
+		int mid = (lo + hi) >>> 1;
+		int other = this.cities[mid];
+		if (other != city && squaredDistance(city, other) <= squaredRadius) {
+			if (this.foundCount == this.foundCities.length) {
+				this.foundCities = Arrays.copyOf(this.foundCities, this.foundCount * 2);
+			}
+			this.foundCities[this.foundCount++] = other;
+		}
+
+		int axis = this.axes[mid];
+		double difference = this.coords[city][axis] - this.coords[other][axis];
+		if (difference <= 0 || difference * difference <= squaredRadius) {
+			searchRadius(lo, mid, city, squaredRadius);
+		}
+		if (difference >= 0 || difference * difference <= squaredRadius) {
+			searchRadius(mid + 1, hi, city, squaredRadius);
+		}
+	}
+
+	/**
+	 * Moves a city up the heap from the given position until its parent is farther.
+	 *
+	 * @param position
+	 *            the position
+	 * @param distance
+	 *            the squared distance of the city
+	 * @param city
+	 *            the city
+	 */
+	private void siftUp(int position, double distance, int city) {
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!isFarther(distance, city, this.heapDistances[parent], this.heapCities[parent])) {
+				break;
+			}
+			this.heapDistances[position] = this.heapDistances[parent];
+			this.heapCities[position] = this.heapCities[parent];
+			position = parent;
+		}
+		this.heapDistances[position] = distance;
+		this.heapCities[position] = city;
+	}
+
+	/**
+	 * Replaces the top of the heap (the farthest city) with the given one and moves it down into place.
+	 *
+	 * @param distance
+	 *            the squared distance of the city
+	 * @param city
+	 *            the city
+	 */
+	private void siftDown(double distance, int city) {
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= this.heapSize) {
+				break;
+			}
+			if (child + 1 < this.heapSize
+					&& isFarther(this.heapDistances[child + 1], this.heapCities[child + 1], this.heapDistances[child],
+							this.heapCities[child])) {
+				child++;
+			}
+			if (!isFarther(this.heapDistances[child], this.heapCities[child], distance, city)) {
+				break;
+			}
+			this.heapDistances[position] = this.heapDistances[child];
+			this.heapCities[position] = this.heapCities[child];
+			position = child;
+		}
+		if (this.heapSize > 0) {
+			this.heapDistances[position] = distance;
+			this.heapCities[position] = city;
+		}
+	}
+
+	/**
+	 * Tests if a city is farther than another, breaking ties by index.
+	 *
+	 * @param distanceA
+	 *            the squared distance of city a
+	 * @param cityA
+	 *            the city a
+	 * @param distanceB
+	 *            the squared distance of city b
+	 * @param cityB
+	 *            the city b
+	 * @return true, if city a is farther
+	 */
+	private static boolean isFarther(double distanceA, int cityA, double distanceB, int cityB) {
+		return distanceA > distanceB || (distanceA == distanceB && cityA > cityB);
+	}
+
+	/**
+	 * Gets the squared distance between two cities.
+	 *
+	 * @param cityA
+	 *            the city a
+	 * @param cityB
+	 *            the city b
+	 * @return the squared distance
+	 */
+	private double squaredDistance(int cityA, int cityB) {
+		double dx = this.coords[cityA][0] - this.coords[cityB][0];
+		double dy = this.coords[cityA][1] - this.coords[cityB][1];
+		return dx * dx + dy * dy;
+	}
+}
@@ -11,7 +11,7 @@ import java.util.Locale;
 public final class Position implements Cloneable, Comparable<Position> {
 
 	/** The edge. */
-	public final Edge edge;
+	public Edge edge;
 
 	/** The distance from the start of the edge (from node). */
 	public double distanceFromStart;
@@ -37,11 +37,24 @@ public final class Position implements Cloneable, Comparable<Position> {
 	 * @return true, if successful
 	 */
 	public boolean canDislocate(double distance) {
-		if (new Double(getDistanceToEdgeEnd()).compareTo(distance) >= 0)
+		if (Double.compare(getDistanceToEdgeEnd(), distance) >= 0)
 			return true;
 		return false;
 	}
 
+	/**
+	 * Moves this position to the given edge and distance, so it can be reused instead of creating a new one.
+	 * 
+	 * @param edge
+	 *            the edge
+	 * @param distance
+	 *            the distance from the start of the edge
+	 */
+	public void set(Edge edge, double distance) {
+		this.edge = edge;
+		this.distanceFromStart = distance;
+	}
+
 	/**
 	 * Dislocates the given delta.
 	 * 
@@ -96,7 +109,7 @@ public final class Position implements Cloneable, Comparable<Position> {
 	 * @return true, if is after or equal
 	 */
 	public boolean isAfterOrEqual(double l) {
-		return new Double(this.distanceFromStart).compareTo(l) >= 0;
+		return Double.compare(this.distanceFromStart, l) >= 0;
 	}
 
 	/**
@@ -118,7 +131,7 @@ public final class Position implements Cloneable, Comparable<Position> {
 	 * @return true, if is before
 	 */
 	public boolean isBefore(double l) {
-		return new Double(this.distanceFromStart).compareTo(l) < 0;
+		return Double.compare(this.distanceFromStart, l) < 0;
 	}
 
 	/**
@@ -178,7 +191,7 @@ public final class Position implements Cloneable, Comparable<Position> {
 				return this.edge.compareTo(s.edge);
 			}
 
-			return new Double(this.distanceFromStart).compareTo(s.distanceFromStart);
+			return Double.compare(this.distanceFromStart, s.distanceFromStart);
 		}
 
 		return -1;
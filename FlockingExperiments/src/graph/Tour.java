@@ -1,37 +1,67 @@
 package graph;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Models a Tour around the graph for the ACS-TSP problem.
  * 
+ * The locations are kept in a growable array, along with the set of the locations visited, so telling if a location
+ * was visited and how many different ones were takes constant time, whatever the length of the tour.
+ * 
+ * A tour shared by several readers (like the one followed by a flock of achievers) can be made read-only, so changing
+ * it throws instead of changing it under them. Copies of a read-only tour can be changed.
+ * 
  * @author Balthazar. Created Dec 10, 2012.
  */
 public class Tour {
 
-	/** The visited locations for this tour, in order. */
-	public ArrayList<Integer> locations;
+	/** The initial capacity of the locations array. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The visited locations for this tour, in order, up to {@link #size}. */
+	private int[] locations;
+
+	/** The number of locations in this tour. */
+	private int size;
+
+	/** The locations visited, one bit per location index. */
+	private long[] visited;
+
+	/** The positions in the tour where a location was visited for the first time, one bit per position. */
+	private long[] firstVisits;
+
+	/** The number of different locations visited. */
+	private int visitedCount;
 
 	/** The total cost of the tour. */
-	public double lastCalculatedCost;
+	private double lastCalculatedCost;
+
+	/** Whether changing the tour is not allowed. */
+	private boolean readOnly;
 
 	/**
-	 * Instantiates a new tour copying the values from another tour.
+	 * Instantiates a new tour copying the values from another tour. The copy can be changed, even if the tour copied
+	 * is read-only.
 	 * 
 	 * @param t
 	 *            the tour to copy
 	 */
 	public Tour(Tour t) {
 		this.lastCalculatedCost = t.lastCalculatedCost;
-		this.locations = new ArrayList<Integer>();
-		this.locations.addAll(t.locations);
+		this.locations = Arrays.copyOf(t.locations, Math.max(t.size, INITIAL_CAPACITY));
+		this.size = t.size;
+		this.visited = t.visited.clone();
+		this.firstVisits = t.firstVisits.clone();
+		this.visitedCount = t.visitedCount;
 	}
 
 	/**
 	 * Basic constructor.
 	 */
 	public Tour() {
-		this.locations = new ArrayList<Integer>();
+		this.locations = new int[INITIAL_CAPACITY];
+		this.visited = new long[1];
+		this.firstVisits = new long[1];
 	}
 
 	/**
@@ -41,7 +71,65 @@ public class Tour {
 	 *            the location index
 	 */
 	public void offer(int locationIndex) {
-		this.locations.add(locationIndex);
+		checkWritable();
+		if (this.size == this.locations.length) {
+			this.locations = Arrays.copyOf(this.locations, this.size * 2);
+		}
+		int word = locationIndex >>> 6;
+		if (word >= this.visited.length) {
+			this.visited = Arrays.copyOf(this.visited, Math.max(word + 1, this.visited.length * 2));
+		}
+		int position = this.size;
+		if ((position >>> 6) >= this.firstVisits.length) {
+			this.firstVisits = Arrays.copyOf(this.firstVisits, this.firstVisits.length * 2);
+		}
+
+		long bit = 1L << locationIndex;
+		if ((this.visited[word] & bit) == 0) {
+			this.visited[word] |= bit;
+			this.firstVisits[position >>> 6] |= 1L << position;
+			this.visitedCount++;
+		} else {
+			this.firstVisits[position >>> 6] &= ~(1L << position);
+		}
+		this.locations[position] = locationIndex;
+		this.size++;
+	}
+
+	/**
+	 * Removes the last location of this tour history, taking it back from the visited ones if it was visited only
+	 * there.
+	 */
+	public void removeLast() {
+		checkWritable();
+		this.size--;
+		int position = this.size;
+		if ((this.firstVisits[position >>> 6] & (1L << position)) != 0) {
+			int locationIndex = this.locations[position];
+			this.visited[locationIndex >>> 6] &= ~(1L << locationIndex);
+			this.visitedCount--;
+		}
+	}
+
+	/**
+	 * Tells if a location was visited in this tour.
+	 * 
+	 * @param locationIndex
+	 *            the location index
+	 * @return true, if the location is in the tour
+	 */
+	public boolean contains(int locationIndex) {
+		int word = locationIndex >>> 6;
+		return word < this.visited.length && (this.visited[word] & (1L << locationIndex)) != 0;
+	}
+
+	/**
+	 * Gets the number of different locations visited in this tour.
+	 * 
+	 * @return the number of different locations
+	 */
+	public int getVisitedCount() {
+		return this.visitedCount;
 	}
 
 	/**
@@ -51,8 +139,16 @@ public class Tour {
 	 *            the location
 	 * @return the position index inside the list
 	 */
-	public int indexOf(Integer location) {
-		return this.locations.indexOf(location);
+	public int indexOf(int location) {
+		if (!contains(location)) {
+			return -1;
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.locations[i] == location) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
@@ -63,7 +159,10 @@ public class Tour {
 	 * @return the node index in under the sequence index passed in
 	 */
 	public int get(int index) {
-		return this.locations.get(index);
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		return this.locations[index];
 	}
 
 	/**
@@ -71,7 +170,10 @@ public class Tour {
 	 * 
 	 */
 	public void clear() {
-		this.locations.clear();
+		checkWritable();
+		Arrays.fill(this.visited, 0L);
+		this.size = 0;
+		this.visitedCount = 0;
 		this.lastCalculatedCost = 0;
 	}
 
@@ -81,7 +183,7 @@ public class Tour {
 	 * @return The amount of locations in the Tour
 	 */
 	public int size() {
-		return this.locations.size();
+		return this.size;
 	}
 
 	/**
@@ -91,10 +193,10 @@ public class Tour {
 	 *            the distance graph
 	 * @return The total cost of the tour
 	 */
-	public Integer getCost(TraditionalGraph distanceGraph) {
+	public int getCost(TraditionalGraph distanceGraph) {
 		int cost = 0;
-		for (int i = 1; i <= this.locations.size() - 1; i++) {
-			cost += distanceGraph.getEdgeLength(this.locations.get(i - 1), this.locations.get(i));
+		for (int i = 1; i <= this.size - 1; i++) {
+			cost += distanceGraph.getEdgeLength(this.locations[i - 1], this.locations[i]);
 		}
 		return cost;
 	}
@@ -106,16 +208,51 @@ public class Tour {
 	 *            the distance graph
 	 */
 	public void calculateCost(TraditionalGraph distanceGraph) {
+		checkWritable();
 		this.lastCalculatedCost = getCost(distanceGraph);
 	}
 
+	/**
+	 * Gets the cost stored by the last {@link #calculateCost(TraditionalGraph)}.
+	 * 
+	 * @return the total cost of the tour
+	 */
+	public double getLastCalculatedCost() {
+		return this.lastCalculatedCost;
+	}
+
+	/**
+	 * Makes the tour read-only, for good. Changing it afterwards throws an {@link UnsupportedOperationException}.
+	 */
+	public void makeReadOnly() {
+		this.readOnly = true;
+	}
+
+	/**
+	 * Tells if the tour is read-only.
+	 * 
+	 * @return true, if changing the tour is not allowed
+	 */
+	public boolean isReadOnly() {
+		return this.readOnly;
+	}
+
+	/**
+	 * Throws if the tour is read-only.
+	 */
+	private void checkWritable() {
+		if (this.readOnly) {
+			throw new UnsupportedOperationException("The tour is read-only.");
+		}
+	}
+
 	/**
 	 * Retrieves the last location in the tour.
 	 * 
 	 * @return The last visited location
 	 */
-	public Integer lastLocation() {
-		return this.locations.get(this.locations.size() - 1);
+	public int lastLocation() {
+		return get(this.size - 1);
 	}
 
 	/**
@@ -123,8 +260,8 @@ public class Tour {
 	 * 
 	 * @return The first visited location
 	 */
-	public Integer firstLocation() {
-		return this.locations.get(0);
+	public int firstLocation() {
+		return get(0);
 	}
 
 	/**
@@ -132,22 +269,35 @@ public class Tour {
 	 * closed.
 	 */
 	public void shiftToZero() {
-		if (this.locations.size() > 2 && this.locations.get(0) != 0
-				&& this.locations.get(0) == this.locations.get(this.locations.size() - 1)) {
-			int zeroPos = this.locations.indexOf(new Integer(0));
-			ArrayList<Integer> temp = new ArrayList<Integer>();
-			temp.addAll(this.locations.subList(zeroPos, this.locations.size()));
-			temp.addAll(this.locations.subList(1, zeroPos));
-			temp.add(0);
-
-			if (temp.get(1) > temp.get(temp.size() - 2)) {
-				this.locations.clear();
-				for (int i = temp.size() - 1; i >= 0; i--) {
-					this.locations.add(temp.get(i));
+		checkWritable();
+		if (this.size > 2 && this.locations[0] != 0 && this.locations[0] == this.locations[this.size - 1]) {
+			int zeroPos = indexOf(0);
+			int[] temp = new int[this.size];
+			int t = 0;
+			for (int i = zeroPos; i < this.size; i++) {
+				temp[t++] = this.locations[i];
+			}
+			for (int i = 1; i < zeroPos; i++) {
+				temp[t++] = this.locations[i];
+			}
+			temp[t++] = 0;
+
+			if (temp[1] > temp[t - 2]) {
+				for (int i = 0; i < t; i++) {
+					this.locations[i] = temp[t - 1 - i];
 				}
 			} else {
-				this.locations = temp;
+				System.arraycopy(temp, 0, this.locations, 0, t);
 			}
+
+			// the same locations, visited first at other positions
+			int[] shifted = Arrays.copyOf(this.locations, t);
+			double cost = this.lastCalculatedCost;
+			clear();
+			for (int location : shifted) {
+				offer(location);
+			}
+			this.lastCalculatedCost = cost;
 		}
 	}
 
@@ -158,7 +308,12 @@ public class Tour {
 	 */
 	@Override
 	public int hashCode() {
-		return this.locations.hashCode();
+		// same as a list of the locations
+		int hashCode = 1;
+		for (int i = 0; i < this.size; i++) {
+			hashCode = 31 * hashCode + this.locations[i];
+		}
+		return hashCode;
 	}
 
 	/**
@@ -177,7 +332,15 @@ public class Tour {
 		if (obj.getClass() != getClass())
 			return false;
 		Tour other = (Tour) obj;
-		return this.locations.equals(other.locations);
+		if (this.size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.locations[i] != other.locations[i]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -190,13 +353,13 @@ public class Tour {
 		StringBuilder sb = new StringBuilder();
 		sb.append("\n");
 		sb.append("Tour: ");
-		sb.append(this.locations.toString());
+		sb.append(Arrays.toString(Arrays.copyOf(this.locations, this.size)));
 		sb.append("\n");
 		sb.append("Length: ");
 		sb.append(this.lastCalculatedCost);
 		sb.append("\n");
 		sb.append("Size: ");
-		sb.append(this.locations.size());
+		sb.append(this.size);
 		sb.append("\n");
 		return sb.toString();
 	}
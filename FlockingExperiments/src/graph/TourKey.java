@@ -0,0 +1,185 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Immutable key of a tour, for telling which tours are the same. A closed tour (one that ends where it started) is
+ * the same cycle whatever node it starts from and whichever way it goes around, so its key keeps the nodes starting
+ * from the lowest one and going first towards the lowest of its two neighbors (like {@link Tour#shiftToZero()}). When
+ * a node is visited more than once, the rotation and direction giving the lowest sequence are kept. Open tours are
+ * kept as they are. The hash is computed once, so keys are cheap to look up.
+ */
+public final class TourKey {
+
+	/** The multiplier mixing each node into the hash. */
+	private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+	/** The nodes, without repeating the first one at the end of a closed tour. */
+	private final int[] nodes;
+
+	/** Whether the tour ends where it started. */
+	private final boolean closed;
+
+	/** The 64 bit hash of the nodes. */
+	private final long hash;
+
+	/**
+	 * Instantiates a new tour key.
+	 *
+	 * @param nodes
+	 *            the nodes, already in their canonical order
+	 * @param closed
+	 *            whether the tour ends where it started
+	 */
+	private TourKey(int[] nodes, boolean closed) {
+		this.nodes = nodes;
+		this.closed = closed;
+
+		long h = closed ? 1L : 0L;
+		for (int node : nodes) {
+			h = (h ^ node) * HASH_MULTIPLIER;
+			h ^= h >>> 29;
+		}
+		this.hash = h;
+	}
+
+	/**
+	 * Gets the key of a tour.
+	 *
+	 * @param tour
+	 *            the tour
+	 * @return the key
+	 */
+	public static TourKey of(Tour tour) {
+		int size = tour.size();
+		boolean closed = size > 2 && tour.get(0) == tour.get(size - 1);
+		int count = closed ? size - 1 : size;
+		int[] path = new int[count];
+		for (int i = 0; i < count; i++) {
+			path[i] = tour.get(i);
+		}
+		if (!closed) {
+			return new TourKey(path, false);
+		}
+
+		int lowest = path[0];
+		for (int node : path) {
+			lowest = Math.min(lowest, node);
+		}
+
+		// try both directions from every visit to the lowest node, keep the lowest sequence
+		int[] best = null;
+		int[] candidate = new int[count];
+		for (int start = 0; start < count; start++) {
+			if (path[start] != lowest) {
+				continue;
+			}
+			for (int step = 1; step >= -1; step -= 2) {
+				for (int i = 0, j = start; i < count; i++, j = (j + step + count) % count) {
+					candidate[i] = path[j];
+				}
+				if (best == null) {
+					best = candidate.clone();
+				} else if (compare(candidate, best) < 0) {
+					System.arraycopy(candidate, 0, best, 0, count);
+				}
+			}
+		}
+		return new TourKey(best, true);
+	}
+
+	/**
+	 * Gets the number of different stops of the tour (the start of a closed tour is counted once).
+	 *
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return this.nodes.length;
+	}
+
+	/**
+	 * Gets a node of the tour, in the canonical order.
+	 *
+	 * @param index
+	 *            the index
+	 * @return the node
+	 */
+	public int get(int index) {
+		return this.nodes[index];
+	}
+
+	/**
+	 * Tells if the tour ends where it started.
+	 *
+	 * @return true, if closed
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Gets the 64 bit hash of the tour.
+	 *
+	 * @return the hash
+	 */
+	public long longHash() {
+		return this.hash;
+	}
+
+	/**
+	 * Hash code.
+	 *
+	 * @return the int
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (this.hash ^ (this.hash >>> 32));
+	}
+
+	/**
+	 * Equals.
+	 *
+	 * @param obj
+	 *            the obj
+	 * @return true, if both keys are of the same tour
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof TourKey)) {
+			return false;
+		}
+		TourKey other = (TourKey) obj;
+		return this.hash == other.hash && this.closed == other.closed && Arrays.equals(this.nodes, other.nodes);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(this.nodes) + (this.closed ? " (closed)" : "");
+	}
+
+	/**
+	 * Compares two sequences of nodes of the same length.
+	 *
+	 * @param a
+	 *            the first sequence
+	 * @param b
+	 *            the second sequence
+	 * @return negative, zero or positive, if the first sequence is lower, the same or higher
+	 */
+	private static int compare(int[] a, int[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+}
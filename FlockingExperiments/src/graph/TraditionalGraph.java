@@ -1,10 +1,10 @@
 package graph;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 
 import util.SortableKeyValue;
@@ -19,7 +19,10 @@ public class TraditionalGraph {
 	/** The Constant INVALID_VALUE for inexistant edges. */
 	public static final int INVALID_VALUE = -1;
 
-	/** The distance matrix. */
+	/**
+	 * The distance matrix. Null for compressed graphs, which keep their edges only in the edge index, and for graphs
+	 * with computed edge lengths.
+	 */
 	public int[][] distanceMatrix;
 
 	/** The number of nodes. */
@@ -28,6 +31,48 @@ public class TraditionalGraph {
 	HashMap<Integer, ArrayList<Integer>> neighborsCache = new HashMap<Integer, ArrayList<Integer>>();
 	HashMap<Integer, ArrayList<SortableKeyValue<Integer, Integer>>> sortableNeighborsCache = new HashMap<Integer, ArrayList<SortableKeyValue<Integer, Integer>>>();
 
+	/** Where the edges leaving each node start in the edge index (one extra entry marks the end). */
+	int[] edgeOffsets;
+
+	/** The destination node of each edge in the edge index, sorted within each node. */
+	int[] edgeTargets;
+
+	/** The id of the opposite direction of each edge in the edge index, if it exists. */
+	int[] reverseEdgeIds;
+
+	/** The length of each edge in the edge index. */
+	int[] edgeLengths;
+
+	/** The canonical edge instances, by id. */
+	Edge[] edges;
+
+	/** The neighbors of each node, closest first, truncated to the candidate list size. */
+	int[][] candidateLists;
+
+	/** The maximum number of neighbors kept in each candidate list. */
+	int candidateListSize = Integer.MAX_VALUE;
+
+	/**
+	 * What computes the edge lengths, for complete graphs that keep neither a distance matrix nor an edge index. Null
+	 * otherwise.
+	 */
+	EdgeLengthSource lengthSource;
+
+	/**
+	 * The distance matrix, row by row, for complete graphs that keep it in a buffer (e.g. a memory-mapped file) instead
+	 * of the heap. Null otherwise.
+	 */
+	IntBuffer distanceBuffer;
+
+	/** The distance matrix built for a graph that keeps none, on first request. */
+	int[][] builtDistanceMatrix;
+
+	/**
+	 * Whether several threads may be reading the graph at once, so edge lengths are computed without going through
+	 * the caches of the length source.
+	 */
+	boolean concurrentReads;
+
 	/**
 	 * Fixed width graph constructor.
 	 * 
@@ -51,6 +96,113 @@ public class TraditionalGraph {
 		this.distanceMatrix = dMatrix.clone();
 	}
 
+	/**
+	 * Creates a compressed graph out of a list of links. As with {@link #setEdgeLength(int, int, int)}, each link
+	 * connects both ways and, if the same pair of nodes is given more than once, the last length wins. Memory is
+	 * proportional to the number of edges, there is no distance matrix.
+	 * 
+	 * @param numberOfNodes
+	 *            the number of nodes
+	 * @param linksFrom
+	 *            one end of each link
+	 * @param linksTo
+	 *            the other end of each link
+	 * @param linkLengths
+	 *            the length of each link
+	 * @param numberOfLinks
+	 *            how many entries of the arrays are used
+	 */
+	public TraditionalGraph(int numberOfNodes, int[] linksFrom, int[] linksTo, int[] linkLengths, int numberOfLinks) {
+		this.numberOfNodes = numberOfNodes;
+		buildCompressedIndex(linksFrom, linksTo, linkLengths, numberOfLinks);
+	}
+
+	/**
+	 * Creates a complete graph (without loops) whose edge lengths are computed on demand by the graph itself, which
+	 * must be an {@link EdgeLengthSource}, keeping neither a distance matrix nor an edge index. Edge ids are derived
+	 * from the node indexes, so there must be less than 2^31 edges.
+	 * 
+	 * @param numberOfNodes
+	 *            the number of nodes
+	 * @param computedLengths
+	 *            must be true, distinguishes this constructor from the fixed width one
+	 */
+	protected TraditionalGraph(int numberOfNodes, boolean computedLengths) {
+		if (!computedLengths || !(this instanceof EdgeLengthSource)
+				|| (long) numberOfNodes * (numberOfNodes - 1) > Integer.MAX_VALUE) {
+			throw new RuntimeException("Cannot compute the edges of a graph with " + numberOfNodes + " nodes.");
+		}
+		this.numberOfNodes = numberOfNodes;
+		this.lengthSource = (EdgeLengthSource) this;
+	}
+
+	/**
+	 * Creates a complete graph (without loops) whose distance matrix is kept, row by row, in a buffer (e.g. a
+	 * memory-mapped file) instead of the heap. As with computed edge lengths, edge ids are derived from the node
+	 * indexes, so no edge index is built, and the edges cannot be changed.
+	 * 
+	 * @param numberOfNodes
+	 *            the number of nodes
+	 * @param distances
+	 *            the distance matrix, row by row, with INVALID_VALUE from each node to itself
+	 */
+	protected TraditionalGraph(int numberOfNodes, IntBuffer distances) {
+		this.numberOfNodes = numberOfNodes;
+		this.distanceBuffer = distances;
+	}
+
+	/**
+	 * Creates a graph that shares the edges of another graph (the distance matrix, the edge index for compressed
+	 * graphs, the buffer or the source computing the lengths) instead of copying them.
+	 * 
+	 * @param other
+	 *            the graph to share the edges with
+	 */
+	protected TraditionalGraph(TraditionalGraph other) {
+		this.numberOfNodes = other.numberOfNodes;
+		this.distanceMatrix = other.distanceMatrix;
+		this.lengthSource = other.lengthSource;
+		this.distanceBuffer = other.distanceBuffer;
+		if (other.distanceMatrix == null) {
+			this.edgeOffsets = other.edgeOffsets;
+			this.edgeTargets = other.edgeTargets;
+			this.edgeLengths = other.edgeLengths;
+			this.reverseEdgeIds = other.reverseEdgeIds;
+			this.edges = other.edges;
+		}
+		this.candidateListSize = other.candidateListSize;
+		this.candidateLists = other.candidateLists;
+	}
+
+	/**
+	 * Whether this graph is compressed, keeping only the existing edges (in compressed sparse rows) instead of a full
+	 * distance matrix.
+	 * 
+	 * @return true, if compressed
+	 */
+	public boolean isCompressed() {
+		return this.distanceMatrix == null && this.distanceBuffer == null && this.lengthSource == null;
+	}
+
+	/**
+	 * Whether the edge lengths of this graph are computed on demand instead of stored.
+	 * 
+	 * @return true, if the edge lengths are computed
+	 */
+	public boolean hasComputedEdgeLengths() {
+		return this.lengthSource != null;
+	}
+
+	/**
+	 * Whether this graph is complete and numbers its edges from the node indexes instead of keeping an edge index, as
+	 * graphs with computed edge lengths or with the distance matrix in a buffer do.
+	 * 
+	 * @return true, if the edge ids are derived from the node indexes
+	 */
+	boolean hasDerivedEdgeIds() {
+		return this.lengthSource != null || this.distanceBuffer != null;
+	}
+
 	/**
 	 * Fills every matrix cell with the given value.
 	 * 
@@ -62,8 +214,12 @@ public class TraditionalGraph {
 	public void fillAll(int value, int[][] matrix) {
 		for (int i = 0; i < matrix.length; i++)
 			java.util.Arrays.fill(matrix[i], value);
-		neighborsCache.clear();
-		sortableNeighborsCache.clear();
+		if (matrix == this.distanceMatrix) {
+			neighborsCache.clear();
+			sortableNeighborsCache.clear();
+			this.edges = null;
+			this.candidateLists = null;
+		}
 	}
 
 	/**
@@ -85,6 +241,22 @@ public class TraditionalGraph {
 	 * @return The distance
 	 */
 	public int getEdgeLength(int nodeIndexA, int nodeIndexB) {
+		if (this.distanceBuffer != null) {
+			return this.distanceBuffer.get(nodeIndexA * this.numberOfNodes + nodeIndexB);
+		}
+		if (this.lengthSource != null) {
+			if (nodeIndexA == nodeIndexB) {
+				return INVALID_VALUE;
+			}
+			if (this.concurrentReads) {
+				return this.lengthSource.computeEdgeLengthConcurrently(nodeIndexA, nodeIndexB);
+			}
+			return this.lengthSource.computeEdgeLength(nodeIndexA, nodeIndexB);
+		}
+		if (this.distanceMatrix == null) {
+			int id = getEdgeId(nodeIndexA, nodeIndexB);
+			return id == INVALID_VALUE ? INVALID_VALUE : this.edgeLengths[id];
+		}
 		return this.distanceMatrix[nodeIndexA][nodeIndexB];
 	}
 
@@ -99,6 +271,10 @@ public class TraditionalGraph {
 	 *            the edge value
 	 */
 	public void setEdgeLength(int nodeIndexA, int nodeIndexB, int edgeValue) {
+		if (this.distanceMatrix == null) {
+			throw new UnsupportedOperationException("Edges of a graph without a distance matrix cannot be changed.");
+		}
+
 		if (edgeValue != this.distanceMatrix[nodeIndexA][nodeIndexB]) {
 			this.sortableNeighborsCache.remove(nodeIndexA);
 			this.sortableNeighborsCache.remove(nodeIndexB);
@@ -109,10 +285,227 @@ public class TraditionalGraph {
 			this.neighborsCache.remove(nodeIndexB);
 		}
 
+		if (edgeValue != this.distanceMatrix[nodeIndexA][nodeIndexB]) {
+			// edge ids, instances and candidate lists must be rebuilt
+			this.edges = null;
+			this.candidateLists = null;
+		}
+
 		this.distanceMatrix[nodeIndexA][nodeIndexB] = edgeValue;
 		this.distanceMatrix[nodeIndexB][nodeIndexA] = edgeValue;
 	}
 
+	/**
+	 * Gets the canonical edge instance between two nodes. Edges that do not exist in the graph get a new instance with
+	 * an invalid length and id. Graphs with derived edge ids have no canonical instances, so a new one is created on
+	 * every call.
+	 * 
+	 * @param from
+	 *            the from
+	 * @param to
+	 *            the to
+	 * @return the edge
+	 */
+	public Edge getEdge(int from, int to) {
+		int id = getEdgeId(from, to);
+		if (id == INVALID_VALUE) {
+			return new Edge(from, to, INVALID_VALUE);
+		}
+		if (hasDerivedEdgeIds()) {
+			return new Edge(from, to, getEdgeLength(from, to), id);
+		}
+		return this.edges[id];
+	}
+
+	/**
+	 * Gets the canonical edge instance with the given id.
+	 * 
+	 * @param id
+	 *            the edge id
+	 * @return the edge
+	 */
+	public Edge getEdgeById(int id) {
+		if (hasDerivedEdgeIds()) {
+			int from = id / (this.numberOfNodes - 1);
+			int to = id % (this.numberOfNodes - 1);
+			return getEdge(from, to < from ? to : to + 1);
+		}
+		buildEdgeIndex();
+		return this.edges[id];
+	}
+
+	/**
+	 * Gets the dense id of the edge between two nodes.
+	 * 
+	 * @param from
+	 *            the from
+	 * @param to
+	 *            the to
+	 * @return the edge id, or INVALID_VALUE if there is no such edge
+	 */
+	public int getEdgeId(int from, int to) {
+		if (hasDerivedEdgeIds()) {
+			// edges leaving a node are numbered by destination, skipping the node itself
+			return from == to ? INVALID_VALUE : from * (this.numberOfNodes - 1) + (to < from ? to : to - 1);
+		}
+		buildEdgeIndex();
+		int id = Arrays.binarySearch(this.edgeTargets, this.edgeOffsets[from], this.edgeOffsets[from + 1], to);
+		return id < 0 ? INVALID_VALUE : id;
+	}
+
+	/**
+	 * Gets the id of the opposite direction of an edge.
+	 * 
+	 * @param id
+	 *            the edge id
+	 * @return the reverse edge id, or INVALID_VALUE if there is no such edge
+	 */
+	public int getReverseEdgeId(int id) {
+		if (hasDerivedEdgeIds()) {
+			Edge edge = getEdgeById(id);
+			return getEdgeId(edge.getTo(), edge.getFrom());
+		}
+		buildEdgeIndex();
+		return this.reverseEdgeIds[id];
+	}
+
+	/**
+	 * Gets the number of (directed) edges in the graph. Edge ids go from 0 to this value (exclusive).
+	 * 
+	 * @return the number of edges
+	 */
+	public int getNumberOfEdges() {
+		if (hasDerivedEdgeIds()) {
+			return this.numberOfNodes * (this.numberOfNodes - 1);
+		}
+		buildEdgeIndex();
+		return this.edges.length;
+	}
+
+	/**
+	 * Builds the edge index, giving each existing edge a dense id and a canonical instance, if not built yet. Edges
+	 * leaving the same node get consecutive ids, ordered by their destination node.
+	 */
+	void buildEdgeIndex() {
+		if (this.edges != null) {
+			return;
+		}
+
+		int[] offsets = new int[this.numberOfNodes + 1];
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			offsets[from + 1] = offsets[from];
+			for (int to = 0; to < this.numberOfNodes; to++) {
+				if (this.distanceMatrix[from][to] != INVALID_VALUE) {
+					offsets[from + 1]++;
+				}
+			}
+		}
+
+		int[] targets = new int[offsets[this.numberOfNodes]];
+		int[] lengths = new int[targets.length];
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			int id = offsets[from];
+			for (int to = 0; to < this.numberOfNodes; to++) {
+				if (this.distanceMatrix[from][to] != INVALID_VALUE) {
+					targets[id] = to;
+					lengths[id] = this.distanceMatrix[from][to];
+					id++;
+				}
+			}
+		}
+
+		setEdgeIndex(offsets, targets, lengths);
+	}
+
+	/**
+	 * Builds the edge index of a compressed graph straight from a list of links, without a distance matrix.
+	 * 
+	 * @param linksFrom
+	 *            one end of each link
+	 * @param linksTo
+	 *            the other end of each link
+	 * @param linkLengths
+	 *            the length of each link
+	 * @param numberOfLinks
+	 *            how many entries of the arrays are used
+	 */
+	void buildCompressedIndex(int[] linksFrom, int[] linksTo, int[] linkLengths, int numberOfLinks) {
+		// every link is stored both ways, except for loops
+		int[] offsets = new int[this.numberOfNodes + 1];
+		for (int i = 0; i < numberOfLinks; i++) {
+			offsets[linksFrom[i] + 1]++;
+			if (linksFrom[i] != linksTo[i]) {
+				offsets[linksTo[i] + 1]++;
+			}
+		}
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			offsets[from + 1] += offsets[from];
+		}
+
+		// sort each row by destination, then by link order, so the last duplicate can be kept
+		long[] entries = new long[offsets[this.numberOfNodes]];
+		int[] next = Arrays.copyOf(offsets, this.numberOfNodes);
+		for (int i = 0; i < numberOfLinks; i++) {
+			entries[next[linksFrom[i]]++] = ((long) linksTo[i] << 32) | i;
+			if (linksFrom[i] != linksTo[i]) {
+				entries[next[linksTo[i]]++] = ((long) linksFrom[i] << 32) | i;
+			}
+		}
+
+		int[] compactOffsets = new int[this.numberOfNodes + 1];
+		int[] targets = new int[entries.length];
+		int[] lengths = new int[entries.length];
+		int id = 0;
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			Arrays.sort(entries, offsets[from], offsets[from + 1]);
+			for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+				int to = (int) (entries[e] >>> 32);
+				int length = linkLengths[(int) entries[e]];
+				boolean lastDuplicate = e + 1 == offsets[from + 1] || (int) (entries[e + 1] >>> 32) != to;
+				if (lastDuplicate && length != INVALID_VALUE) {
+					targets[id] = to;
+					lengths[id] = length;
+					id++;
+				}
+			}
+			compactOffsets[from + 1] = id;
+		}
+
+		setEdgeIndex(compactOffsets, Arrays.copyOf(targets, id), Arrays.copyOf(lengths, id));
+	}
+
+	/**
+	 * Sets the edge index, creating the canonical edge instances and finding the reverse of each edge.
+	 * 
+	 * @param offsets
+	 *            where the edges leaving each node start
+	 * @param targets
+	 *            the destination node of each edge, sorted within each node
+	 * @param lengths
+	 *            the length of each edge
+	 */
+	private void setEdgeIndex(int[] offsets, int[] targets, int[] lengths) {
+		Edge[] edgeInstances = new Edge[targets.length];
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			for (int id = offsets[from]; id < offsets[from + 1]; id++) {
+				edgeInstances[id] = new Edge(from, targets[id], lengths[id], id);
+			}
+		}
+
+		int[] reverseIds = new int[targets.length];
+		for (int id = 0; id < targets.length; id++) {
+			int to = targets[id];
+			int reverseId = Arrays.binarySearch(targets, offsets[to], offsets[to + 1], edgeInstances[id].getFrom());
+			reverseIds[id] = reverseId < 0 ? INVALID_VALUE : reverseId;
+		}
+
+		this.edgeOffsets = offsets;
+		this.edgeTargets = targets;
+		this.edgeLengths = lengths;
+		this.reverseEdgeIds = reverseIds;
+		this.edges = edgeInstances;
+	}
+
 	/**
 	 * Retrieve the neighbors and cost properties wrapped in a sortable location object
 	 * 
@@ -125,9 +518,24 @@ public class TraditionalGraph {
 		}
 
 		ArrayList<SortableKeyValue<Integer, Integer>> neighborIndexes = new ArrayList<SortableKeyValue<Integer, Integer>>();
-		for (int i = 0; i < this.numberOfNodes; i++) {
-			if (this.distanceMatrix[nodeIndex][i] != INVALID_VALUE) {
-				neighborIndexes.add(new SortableKeyValue<Integer, Integer>(i, this.distanceMatrix[nodeIndex][i]));
+		if (this.lengthSource != null) {
+			// every other node is a neighbor, not worth caching
+			for (int i = 0; i < this.numberOfNodes; i++) {
+				if (i != nodeIndex) {
+					neighborIndexes.add(new SortableKeyValue<Integer, Integer>(i, getEdgeLength(nodeIndex, i)));
+				}
+			}
+			return neighborIndexes;
+		} else if (this.distanceMatrix == null && this.distanceBuffer == null) {
+			for (int id = this.edgeOffsets[nodeIndex]; id < this.edgeOffsets[nodeIndex + 1]; id++) {
+				neighborIndexes.add(new SortableKeyValue<Integer, Integer>(this.edgeTargets[id], this.edgeLengths[id]));
+			}
+		} else {
+			for (int i = 0; i < this.numberOfNodes; i++) {
+				int length = getEdgeLength(nodeIndex, i);
+				if (length != INVALID_VALUE) {
+					neighborIndexes.add(new SortableKeyValue<Integer, Integer>(i, length));
+				}
 			}
 		}
 
@@ -161,9 +569,23 @@ public class TraditionalGraph {
 		}
 
 		ArrayList<Integer> neighborIndexes = new ArrayList<Integer>();
-		for (int i = 0; i < this.numberOfNodes; i++) {
-			if (this.distanceMatrix[nodeIndex][i] != INVALID_VALUE) {
-				neighborIndexes.add(i);
+		if (this.lengthSource != null) {
+			// every other node is a neighbor, not worth caching
+			for (int i = 0; i < this.numberOfNodes; i++) {
+				if (i != nodeIndex) {
+					neighborIndexes.add(i);
+				}
+			}
+			return neighborIndexes;
+		} else if (this.distanceMatrix == null && this.distanceBuffer == null) {
+			for (int id = this.edgeOffsets[nodeIndex]; id < this.edgeOffsets[nodeIndex + 1]; id++) {
+				neighborIndexes.add(this.edgeTargets[id]);
+			}
+		} else {
+			for (int i = 0; i < this.numberOfNodes; i++) {
+				if (getEdgeLength(nodeIndex, i) != INVALID_VALUE) {
+					neighborIndexes.add(i);
+				}
 			}
 		}
 
@@ -172,6 +594,112 @@ public class TraditionalGraph {
 		return neighborIndexes;
 	}
 
+	/**
+	 * Gets the candidate list of a node: its neighbors sorted by edge value (distance), ties broken by node index, and
+	 * truncated to the candidate list size. The array is shared and must not be modified.
+	 * 
+	 * @param nodeIndex
+	 *            the node index
+	 * @return the neighbors sorted by distance
+	 */
+	public int[] getCandidateList(int nodeIndex) {
+		buildCandidateLists();
+		return this.candidateLists[nodeIndex];
+	}
+
+	/**
+	 * Gets the maximum number of neighbors kept in each candidate list.
+	 * 
+	 * @return the candidate list size
+	 */
+	public int getCandidateListSize() {
+		return this.candidateListSize;
+	}
+
+	/**
+	 * Restricts the candidate lists to the given number of closest neighbors. Without a limit, every neighbor is a
+	 * candidate.
+	 * 
+	 * @param candidateListSize
+	 *            the maximum number of neighbors in each candidate list
+	 */
+	public void setCandidateListSize(int candidateListSize) {
+		if (candidateListSize != this.candidateListSize) {
+			this.candidateListSize = candidateListSize;
+			this.candidateLists = null;
+		}
+	}
+
+	/**
+	 * Builds the candidate lists of all nodes, if not built yet. They are otherwise built on first use.
+	 */
+	public void buildCandidateLists() {
+		if (this.candidateLists != null) {
+			return;
+		}
+
+		int[][] lists = new int[this.numberOfNodes][];
+		if (this.lengthSource != null) {
+			for (int from = 0; from < this.numberOfNodes; from++) {
+				lists[from] = this.lengthSource.findClosestNeighbors(from, this.candidateListSize);
+			}
+			this.candidateLists = lists;
+			return;
+		}
+		if (this.distanceBuffer != null) {
+			for (int from = 0; from < this.numberOfNodes; from++) {
+				lists[from] = findClosestStoredNeighbors(from);
+			}
+			this.candidateLists = lists;
+			return;
+		}
+
+		buildEdgeIndex();
+		for (int from = 0; from < this.numberOfNodes; from++) {
+			int start = this.edgeOffsets[from];
+			int end = this.edgeOffsets[from + 1];
+
+			// sort by length, then by node index
+			long[] keys = new long[end - start];
+			for (int id = start; id < end; id++) {
+				keys[id - start] = ((long) this.edgeLengths[id] << 32) | this.edgeTargets[id];
+			}
+			Arrays.sort(keys);
+
+			lists[from] = new int[Math.min(keys.length, this.candidateListSize)];
+			for (int i = 0; i < lists[from].length; i++) {
+				lists[from][i] = (int) keys[i];
+			}
+		}
+		this.candidateLists = lists;
+	}
+
+	/**
+	 * Finds the closest neighbors of a node in a graph with the distance matrix in a buffer, sorted as in the candidate
+	 * lists and truncated to the candidate list size.
+	 * 
+	 * @param nodeIndex
+	 *            the node index
+	 * @return the closest neighbors
+	 */
+	private int[] findClosestStoredNeighbors(int nodeIndex) {
+		long[] keys = new long[this.numberOfNodes];
+		int count = 0;
+		for (int i = 0; i < this.numberOfNodes; i++) {
+			int length = getEdgeLength(nodeIndex, i);
+			if (length != INVALID_VALUE) {
+				keys[count++] = ((long) length << 32) | i;
+			}
+		}
+		Arrays.sort(keys, 0, count);
+
+		int[] closest = new int[Math.min(count, this.candidateListSize)];
+		for (int i = 0; i < closest.length; i++) {
+			closest[i] = (int) keys[i];
+		}
+		return closest;
+	}
+
 	/**
 	 * Sorts the neighbors by edge value (distance) and returns the sorted set.
 	 * 
@@ -193,20 +721,12 @@ public class TraditionalGraph {
 	 * @return an ArrayList with the neighbors sorted by distance
 	 */
 	public ArrayList<Integer> getClosestNeighborsSortedByDistance(int nodeIndex, int maxListSize) {
-		ArrayList<SortableKeyValue<Integer, Integer>> closestNeighbors = getSortableNeighborsOf(nodeIndex);
-		Collections.sort(closestNeighbors);
-
-		ArrayList<Integer> neighborIndexes = new ArrayList<Integer>();
-
-		List<SortableKeyValue<Integer, Integer>> sortedNeighborsSublist = null;
-		if (maxListSize < closestNeighbors.size()) {
-			sortedNeighborsSublist = closestNeighbors.subList(0, maxListSize);
-		} else {
-			sortedNeighborsSublist = closestNeighbors;
-		}
+		int[] closestNeighbors = getCandidateList(nodeIndex);
 
-		for (SortableKeyValue<Integer, Integer> c : sortedNeighborsSublist) {
-			neighborIndexes.add(c.keyObject);
+		int size = Math.min(maxListSize, closestNeighbors.length);
+		ArrayList<Integer> neighborIndexes = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++) {
+			neighborIndexes.add(closestNeighbors[i]);
 		}
 
 		return neighborIndexes;
@@ -224,7 +744,7 @@ public class TraditionalGraph {
 		Formatter formatter = new Formatter(sb, Locale.US);
 		formatter.format("%3d [", lineNumber);
 		for (int i = 0; i < this.numberOfNodes; i++) {
-			formatter.format("%3d, ", this.distanceMatrix[lineNumber][i]);
+			formatter.format("%3d, ", getEdgeLength(lineNumber, i));
 		}
 		formatter.close();
 		sb.deleteCharAt(sb.length() - 1);
@@ -257,8 +777,27 @@ public class TraditionalGraph {
 		return sb.toString();
 	}
 
+	/**
+	 * Gets the distance matrix. Other graphs have none on the heap, so one is built for them on the first call and kept,
+	 * which is only sensible for small graphs (e.g. to display them).
+	 * 
+	 * @return the distance matrix
+	 */
 	public int[][] getDistanceMatrix() {
-		return distanceMatrix;
+		if (this.distanceMatrix != null) {
+			return this.distanceMatrix;
+		}
+		if (this.builtDistanceMatrix == null) {
+			int[][] matrix = new int[this.numberOfNodes][this.numberOfNodes];
+			fillAll(INVALID_VALUE, matrix);
+			for (int from = 0; from < this.numberOfNodes; from++) {
+				for (int to : getNeighborsOf(from)) {
+					matrix[from][to] = getEdgeLength(from, to);
+				}
+			}
+			this.builtDistanceMatrix = matrix;
+		}
+		return this.builtDistanceMatrix;
 	}
 
 }
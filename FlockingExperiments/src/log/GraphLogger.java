@@ -51,6 +51,10 @@ public class GraphLogger {
 			logger.info("Optimal tour could not be found in " + iterations + " iterations.");
 	}
 	
+	public static void logMaterializedEdges(int materializedEdges) {
+		logger.info("Edges with segments materialized: " + materializedEdges);
+	}
+
 	public static void logMessage(String message) {
 		logger.info(message);
 	}
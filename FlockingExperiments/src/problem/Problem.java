@@ -9,16 +9,18 @@ import graph.Tour;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 import log.GraphLogger;
 
 import util.SortableKeyValue;
+import util.SplitMix64Random;
 import viewer.FlockingGraphViewer;
 import viewer.GraphViewer;
 import viewer.MovingObject;
 import agent.Boid;
+import agent.BoidPopulation;
 import agent.Environment;
+import agent.ParallelMover;
 
 /**
  * Defines a Flocking-TSP problem.
@@ -42,6 +44,9 @@ public class Problem {
 	/** Max number of iterations. */
 	int maxIterations;
 
+	/** Moves the boids with several threads, or null to move them one by one. */
+	ParallelMover parallelMover;
+
 	/**
 	 * Constructor that instantiates a new problem based on a distance graph and max number of iterations.
 	 * 
@@ -85,22 +90,60 @@ public class Problem {
 	 */
 	public Tour solve(double boidsPerIteration, int maxBoids, double densityThreshold, double wDist, double wOccup,
 			double vision, double speed, GoalEvaluator goal, boolean displaySteps, GraphViewer viewer, boolean verbose) {
+		return solve(boidsPerIteration, maxBoids, densityThreshold, wDist, wOccup, vision, speed, goal, displaySteps,
+				viewer, verbose, new Random().nextLong());
+	}
+
+	/**
+	 * Attempts to solve the problem given the constant values below, replaying the run of a seed. Each boid draws from
+	 * a random stream of its own, split from the one of the seed, so runs from the same seed give the same tour (also
+	 * with deterministic parallel ticks, see {@link #setParallelism(int, boolean)}).
+	 * 
+	 * @param boidsPerIteration
+	 *            the boids per iteration
+	 * @param maxBoids
+	 *            the max boids
+	 * @param densityThreshold
+	 *            the density threshold
+	 * @param wDist
+	 *            the weight of distance
+	 * @param wOccup
+	 *            the weight of occupancy
+	 * @param vision
+	 *            the vision
+	 * @param speed
+	 *            the speed
+	 * @param goal
+	 *            the goal
+	 * @param displaySteps
+	 *            show graphical representation of steps
+	 * @param viewer
+	 *            A UI object used for graphical representation of the steps. If displaySteps is false, this can be null.
+	 * @param verbose
+	 *            print detailed information to standard output
+	 * @param seed
+	 *            the seed
+	 * @return The information about the best found Tour (path)
+	 */
+	public Tour solve(double boidsPerIteration, int maxBoids, double densityThreshold, double wDist, double wOccup,
+			double vision, double speed, GoalEvaluator goal, boolean displaySteps, GraphViewer viewer, boolean verbose,
+			long seed) {
 		this.graphics = displaySteps;
 		this.verbose = verbose;
 		if (this.verbose) {
-			GraphLogger.logMessage("Algorithm started!");
+			GraphLogger.logMessage("Algorithm started! Seed: " + seed);
 		}
 
 		System.gc();
 
-		this.distanceGraph.resetAndBuildSegments();
+		this.distanceGraph.resetSegments();
 
 		if (this.graphics) {
 			viewer.openViewer();
 		}
 
 		// Random and seed
-		Random r = new Random();
+		SplitMix64Random r = new SplitMix64Random(seed);
 
 		Environment environment = new Environment(this.distanceGraph);
 
@@ -110,7 +153,7 @@ public class Problem {
 
 			// check if we need to create more agents
 			if (environment.countAllBoids() < maxBoids
-					&& environment.getAllAchievers().size() <= (environment.countAllBoids() / 3)) {
+					&& environment.countAchievers() <= (environment.countAllBoids() / 3)) {
 				currentBoidCreationProgress += boidsPerIteration;
 
 				// try to build a new agent
@@ -126,16 +169,24 @@ public class Problem {
 				}
 			}
 
-			// act with every agent
-			Set<Boid> aliveBoids = environment.getAllBoids();
-			for (Boid b : aliveBoids) {
-				b.tryToMove(b.getSpeed());
+			// act with every agent, births and deaths take effect at the end of the tick
+			environment.applyPendingChanges();
+			List<Boid> aliveBoids = environment.getAllBoids();
+			if (this.parallelMover != null) {
+				this.parallelMover.moveAll(environment);
+			} else {
+				for (int i = 0; i < aliveBoids.size(); i++) {
+					Boid b = aliveBoids.get(i);
+					b.tryToMove(b.getSpeed());
+				}
 			}
+			environment.applyPendingChanges();
 
 			Tour result = testAlgorithmTermination(environment, densityThreshold, goal);
 			if (result != null) {
 				if (this.verbose) {
 					GraphLogger.logConverged(true, t);
+					GraphLogger.logMaterializedEdges(this.distanceGraph.getMaterializedEdgeCount());
 					// GraphLogger.logFlocksMap(environment.getAllPaths());
 				}
 				return result;
@@ -153,12 +204,35 @@ public class Problem {
 
 		if (this.verbose) {
 			GraphLogger.logConverged(false, this.maxIterations);
+			GraphLogger.logMaterializedEdges(this.distanceGraph.getMaterializedEdgeCount());
 			GraphLogger.logFlocksMap(environment.getAllPaths());
 		}
 			
 		return null;
 	}
 	
+	/**
+	 * Sets the number of threads that move the boids in each iteration (see {@link ParallelMover}). Deterministic
+	 * ticks first let the explorers propose their moves and then commit them in the population order, so a run gives
+	 * the same tours for any number of threads. Ticks with relaxed determinism make the moves right away, serving the
+	 * explorers that compete for a space or for random numbers in whatever order the threads get there, so runs can't
+	 * be reproduced.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 0 to move the boids one by one in the population order
+	 * @param deterministic
+	 *            whether the result must not depend on the threads
+	 */
+	public void setParallelism(int parallelism, boolean deterministic) {
+		if (this.parallelMover != null) {
+			this.parallelMover.shutdown();
+			this.parallelMover = null;
+		}
+		if (parallelism > 0) {
+			this.parallelMover = new ParallelMover(parallelism, deterministic);
+		}
+	}
+
 	public Tour solve(double boidsPerIteration, int maxBoids, double densityThreshold, double wDist, double wOccup,
 			double vision, double speed, GoalEvaluator goal, boolean displaySteps) {
 		FlockingGraphViewer viewer = null;
@@ -168,6 +242,120 @@ public class Problem {
 		return this.solve(boidsPerIteration, maxBoids, densityThreshold, wDist, wOccup, vision, speed, goal, displaySteps, viewer, true);
 	}
 
+	/**
+	 * Attempts to solve the TSP with the boids kept in a {@link BoidPopulation}, as parallel arrays instead of one
+	 * object per boid. Explorers and achievers follow the same rules as in
+	 * {@link #solve(double, int, double, double, double, double, double, GoalEvaluator, boolean)}, without a graphical
+	 * representation of the steps.
+	 * 
+	 * @param boidsPerIteration
+	 *            the boids per iteration
+	 * @param maxBoids
+	 *            the max boids
+	 * @param densityThreshold
+	 *            the density threshold
+	 * @param wDist
+	 *            the weight of distance
+	 * @param wOccup
+	 *            the weight of occupancy
+	 * @param vision
+	 *            the vision
+	 * @param speed
+	 *            the speed
+	 * @param verbose
+	 *            print detailed information to standard output
+	 * @return The information about the best found Tour (path)
+	 */
+	public Tour solveWithPopulation(double boidsPerIteration, int maxBoids, double densityThreshold, double wDist,
+			double wOccup, double vision, double speed, boolean verbose) {
+		return solveWithPopulation(boidsPerIteration, maxBoids, densityThreshold, wDist, wOccup, vision, speed,
+				verbose, new Random().nextLong());
+	}
+
+	/**
+	 * Attempts to solve the TSP with the boids kept in a {@link BoidPopulation}, replaying the run of a seed.
+	 * 
+	 * @param boidsPerIteration
+	 *            the boids per iteration
+	 * @param maxBoids
+	 *            the max boids
+	 * @param densityThreshold
+	 *            the density threshold
+	 * @param wDist
+	 *            the weight of distance
+	 * @param wOccup
+	 *            the weight of occupancy
+	 * @param vision
+	 *            the vision
+	 * @param speed
+	 *            the speed
+	 * @param verbose
+	 *            print detailed information to standard output
+	 * @param seed
+	 *            the seed
+	 * @return The information about the best found Tour (path)
+	 */
+	public Tour solveWithPopulation(double boidsPerIteration, int maxBoids, double densityThreshold, double wDist,
+			double wOccup, double vision, double speed, boolean verbose, long seed) {
+		this.graphics = false;
+		this.verbose = verbose;
+		if (this.verbose) {
+			GraphLogger.logMessage("Algorithm started! Seed: " + seed);
+		}
+
+		System.gc();
+
+		this.distanceGraph.resetSegments();
+
+		// Random and seed, the boids get streams of their own split from it
+		SplitMix64Random r = new SplitMix64Random(seed);
+
+		BoidPopulation population = new BoidPopulation(this.distanceGraph, wDist, wOccup, vision, r);
+
+		double currentBoidCreationProgress = 0d;
+		// Main Loop
+		for (int t = 1; t <= this.maxIterations; t++) { // In each iteration
+
+			// check if we need to create more agents
+			if (population.size() < maxBoids && population.getAchieverCount() <= (population.size() / 3)) {
+				currentBoidCreationProgress += boidsPerIteration;
+
+				// try to build a new agent
+				while (currentBoidCreationProgress >= 1d) {
+					try {
+						population.spawnExplorer(getSpawnPosition(r), randomize(speed, r));
+					} catch (Exception exception) {
+						if (this.verbose) {
+							GraphLogger.logBoidSpawnSkipped();
+						}
+					}
+					currentBoidCreationProgress -= 1d;
+				}
+			}
+
+			// act with every agent
+			population.tick();
+
+			SortableKeyValue<Tour, Double> mostDensePath = population.getMostDensePath();
+			if (mostDensePath != null && mostDensePath.valueToUseOnSorting.compareTo(densityThreshold) >= 0) {
+				if (this.verbose) {
+					GraphLogger.logConverged(true, t);
+					GraphLogger.logMaterializedEdges(this.distanceGraph.getMaterializedEdgeCount());
+				}
+				// a copy, the tour is shared by the achievers following it
+				return new Tour(mostDensePath.keyObject);
+			}
+		}
+
+		if (this.verbose) {
+			GraphLogger.logConverged(false, this.maxIterations);
+			GraphLogger.logMaterializedEdges(this.distanceGraph.getMaterializedEdgeCount());
+			GraphLogger.logFlocksMap(population.getAllPaths());
+		}
+
+		return null;
+	}
+
 	/**
 	 * Test algorithm termination.
 	 * 
@@ -185,7 +373,8 @@ public class Problem {
 			Double density = mostDensePath.valueToUseOnSorting;
 
 			if (density.compareTo(densityThreshold) >= 0) {
-				return mostDensePath.keyObject;
+				// a copy, the tour is shared by the achievers following it
+				return new Tour(mostDensePath.keyObject);
 			}
 		}
 		return null;
@@ -211,12 +400,13 @@ public class Problem {
 	 * @throws Exception
 	 *             the 'too crowded' exception
 	 */
-	private void spawnBoid(Random r, Environment environment, GoalEvaluator goal, double boidSpeed, double visionRange,
-			double weightOfDistance, double weightOfOccupancy) throws Exception {
+	private void spawnBoid(SplitMix64Random r, Environment environment, GoalEvaluator goal, double boidSpeed,
+			double visionRange, double weightOfDistance, double weightOfOccupancy) throws Exception {
 		Position newWouldBePos = getSpawnPosition(r);
 		double speed = randomize(boidSpeed, r);
+		// the boid gets a random stream of its own, so it never waits for other boids to draw
 		Boid newBoid = createNewBoid(newWouldBePos, speed, visionRange, weightOfDistance, weightOfOccupancy,
-				environment, goal, r);
+				environment, goal, r.split());
 	}
 
 	/**
@@ -304,7 +494,7 @@ public class Problem {
 	 * @param boids
 	 *            the boids
 	 */
-	private void draw(GraphViewer viewer, Set<Boid> boids) {
+	private void draw(GraphViewer viewer, List<Boid> boids) {
 		viewer.updateViewer(extractBoidPositions(boids));
 	}
 
@@ -315,7 +505,7 @@ public class Problem {
 	 *            the boids
 	 * @return the list
 	 */
-	public List<MovingObject> extractBoidPositions(Set<Boid> boids) {
+	public List<MovingObject> extractBoidPositions(List<Boid> boids) {
 		List<MovingObject> ps = new ArrayList<MovingObject>();
 		for (Boid b : boids) {
 			ps.add(new MovingObject(b.getPos(), b.getColor()));
@@ -8,7 +8,6 @@ import graph.Tour;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 import agent.Boid;
 import agent.Environment;
@@ -74,7 +73,7 @@ public class WollowskiProblem extends Problem {
 	@Override
 	protected Tour testAlgorithmTermination(Environment environment, double densityThreshold, GoalEvaluator goal) {
 		List<Integer> neighborsOf0 = environment.getFlockingGraph().getNeighborsOf(0);
-		Set<Boid> boids = environment.getAllBoids();
+		List<Boid> boids = environment.getAllBoids();
 		for (Integer n : neighborsOf0) {
 			for (Boid b : boids) {
 				WollowskiBoid boid = (WollowskiBoid) b;
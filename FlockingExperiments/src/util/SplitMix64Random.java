@@ -0,0 +1,125 @@
+package util;
+
+import java.util.Random;
+
+/**
+ * Random generator of the SplitMix64 family, the one behind SplittableRandom (not available before Java 8). Every
+ * instance is a stream of its own, which can be split into new streams that don't overlap with it, so each boid can
+ * draw from its own stream. Runs from the same seed are then the same, whatever thread draws for each boid. Unlike
+ * {@link Random}, instances are not thread-safe.
+ */
+public class SplitMix64Random extends Random {
+
+	/** The serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The increment of the streams created from a seed, the odd integer closest to 2^64 / phi. */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/** The scale of the 53 random bits of a double. */
+	private static final double DOUBLE_UNIT = 1d / (1L << 53);
+
+	/** The current state. */
+	private long state;
+
+	/** The increment of the state, odd. */
+	private final long gamma;
+
+	/**
+	 * Instantiates a new generator.
+	 *
+	 * @param seed
+	 *            the seed
+	 */
+	public SplitMix64Random(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Instantiates a new generator.
+	 *
+	 * @param seed
+	 *            the seed
+	 * @param gamma
+	 *            the increment of the state
+	 */
+	private SplitMix64Random(long seed, long gamma) {
+		super(seed);
+		this.state = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Creates a new generator, drawing its seed and increment from this one.
+	 *
+	 * @return the new generator
+	 */
+	public SplitMix64Random split() {
+		return new SplitMix64Random(mix64(nextState()), mixGamma(nextState()));
+	}
+
+	/**
+	 * Sets the seed, keeping the increment.
+	 *
+	 * @param seed
+	 *            the seed
+	 */
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+		this.state = seed;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (mix64(nextState()) >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		return mix64(nextState());
+	}
+
+	@Override
+	public double nextDouble() {
+		return (mix64(nextState()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Advances the state.
+	 *
+	 * @return the new state
+	 */
+	private long nextState() {
+		this.state += this.gamma;
+		return this.state;
+	}
+
+	/**
+	 * Scrambles a state into a random value (variant 13 of Stafford's mixers).
+	 *
+	 * @param z
+	 *            the state
+	 * @return the random value
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Scrambles a state into the increment of a new stream. It must be odd, and with too few bit transitions the
+	 * stream would look less random, so they are flipped into many.
+	 *
+	 * @param z
+	 *            the state
+	 * @return the increment
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -1,54 +1,54 @@
 package util;
 
-import java.util.List;
 import java.util.Random;
 
 /**
  * Weighted Roulette Wheel Selector.
  * 
+ * The wheel is rolled over the weights in the order they are given, without normalizing them or sorting them by
+ * probability first, so a pick takes a single pass and allocates nothing.
+ * 
  * @author Balthazar. Created Dec 10, 2012.
  */
 public class WeightedRouletteWheelSelector {
 
-	/** The items that might be selected. */
-	List<SortableKeyValue<?, Double>> items;
-
-	/** The random instance. */
-	Random rand = null;
-
 	/**
-	 * The cumulative sum of all the properties.
+	 * Not instantiable, the wheel is a single function over an array of weights.
 	 */
-	double totalSum = 0;
+	private WeightedRouletteWheelSelector() {
+	}
 
 	/**
-	 * Constructor that calculates the totalSum.
+	 * Selects one index at random based on the weighted probabilities. Nothing is drawn from the random instance when
+	 * no weight is positive. The last positive weight covers rounding errors in the sum.
 	 * 
-	 * @param items
-	 *            the items
-	 * @param r
-	 *            the r
+	 * @param weights
+	 *            the weights, those not positive are never selected
+	 * @param count
+	 *            how many weights are used, from the start of the array
+	 * @param totalSum
+	 *            the sum of the positive weights
+	 * @param rand
+	 *            the random instance
+	 * @return the selected index, or -1 if no weight is positive
 	 */
-	public WeightedRouletteWheelSelector(List<SortableKeyValue<?, Double>> items, Random r) {
-		this.rand = r;
-		this.items = items;
-		for (SortableKeyValue<?, Double> item : items) {
-			this.totalSum += item.valueToUseOnSorting;
+	public static int select(double[] weights, int count, double totalSum, Random rand) {
+		if (totalSum <= 0d) {
+			return -1;
 		}
-	}
 
-	/**
-	 * Selects one item at random based on the weighted probabilities.
-	 * 
-	 * @return the selected item
-	 */
-	public SortableKeyValue<?, Double> getRandom() {
-		double rolledValue = this.rand.nextDouble() * this.totalSum;
-		double cumulativeSum = 0;
-		int i = 0;
-		while (cumulativeSum <= rolledValue) {
-			cumulativeSum += this.items.get(i++).valueToUseOnSorting;
+		double rolledValue = rand.nextDouble() * totalSum;
+		double cumulativeSum = 0d;
+		int selected = -1;
+		for (int i = 0; i < count; i++) {
+			if (weights[i] > 0d) {
+				selected = i;
+				cumulativeSum += weights[i];
+				if (cumulativeSum > rolledValue) {
+					break;
+				}
+			}
 		}
-		return this.items.get(i - 1);
+		return selected;
 	}
 }